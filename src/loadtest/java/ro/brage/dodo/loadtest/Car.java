@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.loadtest;
+
+import java.util.List;
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.JoinColumn;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import ro.brage.dodo.jpa.Model;
+
+/**
+ * The entity of the load test
+ * 
+ * @author Dorin Brage
+ */
+@Entity
+@Table(name = "CAR")
+@NamedQuery(name = "Car.findAll", query = "SELECT c FROM Car c")
+@NamedEntityGraph(name = "Car.loadByGuid", attributeNodes = @NamedAttributeNode("features"))
+public class Car extends Model {
+
+  private static final long serialVersionUID = -1375526924893325651L;
+
+  @Column(name = "MAKE")
+  private String make;
+
+  @Column(name = "MODEL")
+  private String model;
+
+  @ElementCollection
+  @CollectionTable(name = "CAR_FEATURE", joinColumns = @JoinColumn(name = "CAR_GUID"))
+  @Column(name = "FEATURE")
+  private List<String> features;
+
+  public String getMake() {
+    return make;
+  }
+
+  public void setMake(String make) {
+    this.make = make;
+  }
+
+  public String getModel() {
+    return model;
+  }
+
+  public void setModel(String model) {
+    this.model = model;
+  }
+
+  public List<String> getFeatures() {
+    return features;
+  }
+
+  public void setFeatures(List<String> features) {
+    this.features = features;
+  }
+
+}
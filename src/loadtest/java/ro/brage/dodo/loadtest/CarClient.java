@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A minimal HTTP client of the cars resource, the connections are kept alive by the JDK
+ * 
+ * @author Dorin Brage
+ */
+public class CarClient {
+
+  private final static Pattern GUID = Pattern.compile("\"guid\"\\s*:\\s*\"([^\"]+)\"");
+
+  private final String baseUrl;
+  private final int collectionSize;
+
+  public CarClient(String baseUrl, int collectionSize) {
+    this.baseUrl = baseUrl;
+    this.collectionSize = collectionSize;
+  }
+
+  /**
+   * @return the GUID of the created car
+   */
+  public String create(int number) throws IOException {
+    Matcher matcher = GUID.matcher(call("POST", "/", body(number)));
+    if (!matcher.find()) {
+      throw new IOException("No GUID in the response");
+    }
+    return matcher.group(1);
+  }
+
+  public void read(String guid) throws IOException {
+    call("GET", "/" + guid, null);
+  }
+
+  public void update(String guid, int number) throws IOException {
+    call("PUT", "/" + guid, body(number));
+  }
+
+  public void list() throws IOException {
+    call("GET", "/", null);
+  }
+
+  private String body(int number) {
+    StringBuilder body = new StringBuilder("{\"make\":\"Make ").append(number % 50)
+        .append("\",\"model\":\"Model ").append(number).append("\",\"features\":[");
+    for (int i = 0; i < collectionSize; i++) {
+      body.append(i == 0 ? "" : ",").append("\"feature ").append(i).append('"');
+    }
+    return body.append("]}").toString();
+  }
+
+  private String call(String method, String path, String body) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+    connection.setRequestMethod(method);
+    connection.setRequestProperty("Accept", "application/json");
+    if (body != null) {
+      connection.setDoOutput(true);
+      connection.setRequestProperty("Content-Type", "application/json");
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    int status = connection.getResponseCode();
+    InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    if (in != null) {
+      byte[] buffer = new byte[8192];
+      try (InputStream stream = in) {
+        for (int read; (read = stream.read(buffer)) > 0;) {
+          response.write(buffer, 0, read);
+        }
+      }
+    }
+    if (status >= 400) {
+      throw new IOException(method + " " + path + " answered " + status);
+    }
+    return new String(response.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+}
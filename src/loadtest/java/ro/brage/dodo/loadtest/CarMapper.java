@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import javax.enterprise.context.ApplicationScoped;
+import ro.brage.dodo.rs.mappers.AdvancedMapper;
+
+/**
+ * The mapper of the load test, written by hand as the MapStruct processor doesn't run on the
+ * load test sources. <code>map</code> skips the features, <code>load</code> copies them.
+ * 
+ * @author Dorin Brage
+ */
+@ApplicationScoped
+public class CarMapper implements AdvancedMapper<Car, CarDTO> {
+
+  @Override
+  public Car map(CarDTO dto) {
+    if (dto == null) {
+      return null;
+    }
+    Car car = new Car();
+    updateEntity(dto, car);
+    return car;
+  }
+
+  @Override
+  public CarDTO map(Car car) {
+    if (car == null) {
+      return null;
+    }
+    CarDTO dto = new CarDTO();
+    dto.setGuid(car.getGuid());
+    dto.setCreatedBy(car.getCreatedBy());
+    dto.setCreatedOn(car.getCreatedOn());
+    dto.setUpdatedBy(car.getUpdatedBy());
+    dto.setUpdatedOn(car.getUpdatedOn());
+    dto.setMake(car.getMake());
+    dto.setModel(car.getModel());
+    return dto;
+  }
+
+  @Override
+  public void updateEntity(CarDTO dto, Car car) {
+    car.setMake(dto.getMake());
+    car.setModel(dto.getModel());
+    car.setFeatures(dto.getFeatures() == null ? null : new ArrayList<>(dto.getFeatures()));
+  }
+
+  @Override
+  public void updateDTO(CarDTO dto, Car car) {
+    dto.setMake(car.getMake());
+    dto.setModel(car.getModel());
+    dto.setFeatures(car.getFeatures() == null ? null : new ArrayList<>(car.getFeatures()));
+  }
+
+  @Override
+  public List<CarDTO> findDTOs(List<Car> cars) {
+    return all(cars, this::map);
+  }
+
+  @Override
+  public List<Car> findEntities(List<CarDTO> dtos) {
+    return all(dtos, this::map);
+  }
+
+  @Override
+  public List<CarDTO> loadDTOs(List<Car> cars) {
+    return all(cars, this::load);
+  }
+
+  @Override
+  public List<Car> loadEntities(List<CarDTO> dtos) {
+    return all(dtos, this::load);
+  }
+
+  @Override
+  public Car load(CarDTO dto) {
+    return map(dto);
+  }
+
+  @Override
+  public CarDTO load(Car car) {
+    CarDTO dto = map(car);
+    if (dto != null) {
+      updateDTO(dto, car);
+    }
+    return dto;
+  }
+
+  private static <S, T> List<T> all(List<S> sources, Function<S, T> mapping) {
+    if (sources == null) {
+      return null;
+    }
+    List<T> targets = new ArrayList<>(sources.size());
+    sources.forEach(source -> targets.add(mapping.apply(source)));
+    return targets;
+  }
+
+}
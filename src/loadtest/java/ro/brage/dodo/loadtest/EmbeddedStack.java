@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.loadtest;
+
+import javax.enterprise.inject.Vetoed;
+import org.apache.tomee.embedded.Configuration;
+import org.apache.tomee.embedded.Container;
+
+/**
+ * The embedded TomEE server deploying the classpath as a web application, with an in-memory H2
+ * database behind a pooled JTA data source
+ * 
+ * @author Dorin Brage
+ */
+@Vetoed
+public class EmbeddedStack implements AutoCloseable {
+
+  private final static String CONTEXT = "/loadtest";
+
+  private final Container container;
+
+  private EmbeddedStack(Container container) {
+    this.container = container;
+  }
+
+  /**
+   * @param pool the maximum number of database connections
+   */
+  public static EmbeddedStack start(int pool) {
+    Configuration configuration = new Configuration().randomHttpPort();
+    configuration.property("loadtestDatabase", "new://Resource?type=DataSource");
+    configuration.property("loadtestDatabase.JdbcDriver", "org.h2.Driver");
+    configuration.property("loadtestDatabase.JdbcUrl", "jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1");
+    configuration.property("loadtestDatabase.JtaManaged", "true");
+    configuration.property("loadtestDatabase.MaxActive", String.valueOf(pool));
+
+    Container container = new Container(configuration);
+    try {
+      container.deployClasspathAsWebApp(CONTEXT, null);
+    } catch (RuntimeException e) {
+      // a failed deployment leaves the server threads running
+      try {
+        container.close();
+      } catch (Exception closing) {
+        e.addSuppressed(closing);
+      }
+      throw e;
+    }
+    return new EmbeddedStack(container);
+  }
+
+  public String getBaseUrl() {
+    return "http://localhost:" + container.getConfiguration().getHttpPort() + CONTEXT + "/api";
+  }
+
+  @Override
+  public void close() throws Exception {
+    container.close();
+  }
+
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds. The values below 64 are exact, the others
+ * fall in 32 buckets per power of two, so a percentile is off by at most about 3%.
+ * 
+ * @author Dorin Brage
+ */
+public class LatencyHistogram {
+
+  private final static int SUB_BUCKETS = 32;
+  private final static int EXACT = 64;
+
+  private final AtomicLongArray counts = new AtomicLongArray(EXACT + 57 * SUB_BUCKETS);
+  private final LongAdder total = new LongAdder();
+  private volatile long max;
+
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(index(value));
+    total.increment();
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  public long getCount() {
+    return total.sum();
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * @param percentile e.g. 99.9
+   * @return the latency in nanoseconds
+   */
+  public long getPercentile(double percentile) {
+    long count = total.sum();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(max, upperBound(i));
+      }
+    }
+    return max;
+  }
+
+  private static int index(long value) {
+    if (value < EXACT) {
+      return (int) value;
+    }
+    int msb = 63 - Long.numberOfLeadingZeros(value);
+    int shift = msb - 5;
+    return EXACT + (msb - 6) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  private static long upperBound(int index) {
+    if (index < EXACT) {
+      return index;
+    }
+    int msb = (index - EXACT) / SUB_BUCKETS + 6;
+    long sub = (index - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+    return ((sub + 1) << (msb - 5)) - 1;
+  }
+
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import ro.brage.dodo.loadtest.Workload.Operation;
+
+/**
+ * Drives an open-model workload: the requests arrive at exponentially distributed intervals
+ * whatever the time taken by the previous ones. The latency is measured from the intended
+ * arrival, so the time a request waited for a free client counts (no coordinated omission).
+ * 
+ * @author Dorin Brage
+ */
+public class LoadDriver {
+
+  private final Workload workload;
+  private final CarClient client;
+  private final List<String> guids;
+  private final AtomicInteger sequence = new AtomicInteger();
+
+  public LoadDriver(Workload workload, CarClient client, List<String> guids) {
+    this.workload = workload;
+    this.client = client;
+    this.guids = guids;
+  }
+
+  /**
+   * Run the workload for a number of seconds
+   *
+   * @return the result of the run
+   */
+  public Result run(int seconds) throws InterruptedException {
+    Result result = new Result();
+    ExecutorService clients = Executors.newFixedThreadPool(workload.clients);
+    Random arrivals = new Random();
+    LongAdder pending = new LongAdder();
+    Map<Long, Long> allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+    long end = start + TimeUnit.SECONDS.toNanos(seconds);
+    long next = start;
+
+    while (true) {
+      next += (long) (-Math.log(1 - arrivals.nextDouble()) * 1e9 / workload.rate);
+      if (next >= end) {
+        break;
+      }
+      LockSupport.parkNanos(next - System.nanoTime());
+      long intended = next;
+      pending.increment();
+      clients.execute(() -> {
+        try {
+          execute(intended, result);
+        } finally {
+          pending.decrement();
+        }
+      });
+    }
+    long timeout = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+    while (pending.sum() > 0 && System.nanoTime() < timeout) {
+      Thread.sleep(10);
+    }
+
+    result.elapsed = System.nanoTime() - start;
+    result.allocated = allocatedSince(allocatedBefore);
+    clients.shutdown();
+    clients.awaitTermination(1, TimeUnit.MINUTES);
+    return result;
+  }
+
+  private void execute(long intended, Result result) {
+    Random random = ThreadLocalRandom.current();
+    Operation operation = workload.nextOperation(random);
+    try {
+      switch (operation) {
+        case READ:
+          client.read(guids.get(workload.nextKey(random)));
+          break;
+        case UPDATE:
+          client.update(guids.get(workload.nextKey(random)), sequence.incrementAndGet());
+          break;
+        case CREATE:
+          client.create(sequence.incrementAndGet());
+          break;
+        default:
+          client.list();
+      }
+      result.latencies[operation.ordinal()].record(System.nanoTime() - intended);
+      result.all.record(System.nanoTime() - intended);
+    } catch (Exception e) {
+      result.errors.increment();
+    }
+  }
+
+  /**
+   * The bytes allocated so far by every live thread, the client and the server share the JVM
+   */
+  private static Map<Long, Long> allocatedBytes() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long[] ids = threads.getAllThreadIds();
+    long[] allocated = threads.getThreadAllocatedBytes(ids);
+    Map<Long, Long> bytes = new HashMap<>();
+    for (int i = 0; i < ids.length; i++) {
+      if (allocated[i] >= 0) {
+        bytes.put(ids[i], allocated[i]);
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * The bytes allocated since a sample, sampled while the client threads are still alive as the
+   * allocations of a terminated thread aren't reported anymore
+   */
+  private static long allocatedSince(Map<Long, Long> before) {
+    long sum = 0;
+    for (Map.Entry<Long, Long> thread : allocatedBytes().entrySet()) {
+      sum += thread.getValue() - before.getOrDefault(thread.getKey(), 0L);
+    }
+    return sum;
+  }
+
+  public static class Result {
+
+    final LatencyHistogram all = new LatencyHistogram();
+    final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    final LongAdder errors = new LongAdder();
+    long elapsed;
+    long allocated;
+
+    Result() {
+      for (int i = 0; i < latencies.length; i++) {
+        latencies[i] = new LatencyHistogram();
+      }
+    }
+
+    /**
+     * Print the throughput, the latencies and the allocation per request
+     */
+    void print() {
+      long requests = all.getCount();
+      System.out.printf("requests=%d errors=%d throughput=%.1f/s allocated=%d bytes/request%n",
+          requests, errors.sum(), requests / (elapsed / 1e9),
+          requests == 0 ? 0 : allocated / requests);
+      print("ALL", all);
+      for (Operation operation : Operation.values()) {
+        print(operation.name(), latencies[operation.ordinal()]);
+      }
+    }
+
+    private static void print(String name, LatencyHistogram histogram) {
+      System.out.printf("%-6s count=%-8d p50=%8.2fms p99=%8.2fms p999=%8.2fms max=%8.2fms%n", name,
+          histogram.getCount(), histogram.getPercentile(50) / 1e6,
+          histogram.getPercentile(99) / 1e6, histogram.getPercentile(99.9) / 1e6,
+          histogram.getMax() / 1e6);
+    }
+
+  }
+
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Boots the cars resource on an embedded server and database, seeds it and drives the
+ * {@link Workload} against it
+ * 
+ * <pre>
+ * mvn -Ploadtest test-compile exec:java -Dloadtest.rate=1000 -Dloadtest.skew=1.2
+ * </pre>
+ * 
+ * @author Dorin Brage
+ */
+public class LoadTest {
+
+  public static void main(String[] args) throws Exception {
+    Workload workload = new Workload();
+    System.out.println("Workload " + workload);
+
+    try (EmbeddedStack stack = EmbeddedStack.start(workload.pool)) {
+      CarClient client = new CarClient(stack.getBaseUrl() + "/cars", workload.collectionSize);
+
+      List<String> guids = new ArrayList<>(workload.keys);
+      for (int i = 0; i < workload.keys; i++) {
+        guids.add(client.create(i));
+      }
+
+      LoadDriver driver = new LoadDriver(workload, client, guids);
+      if (workload.warmup > 0) {
+        System.out.println("Warming up");
+        driver.run(workload.warmup);
+      }
+      System.out.println("Measuring");
+      driver.run(workload.duration).print();
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.loadtest;
+
+import java.util.Random;
+
+/**
+ * The workload of a run, read from the <code>loadtest.*</code> system properties
+ * <ul>
+ * <li>rate: the arrivals per second, they don't wait for the previous requests (open model)</li>
+ * <li>duration, warmup: the seconds of the measured run and of the warmup before it</li>
+ * <li>reads, updates, creates, lists: the mix of getByGuid, updateByGuid, create and getAll</li>
+ * <li>keys, skew: the number of seeded entities and the exponent of the Zipf distribution
+ * picking them, 0 for uniform</li>
+ * <li>collectionSize: the number of features of every car</li>
+ * <li>clients, pool: the client threads and the connections of the database pool</li>
+ * </ul>
+ * 
+ * @author Dorin Brage
+ */
+public class Workload {
+
+  public enum Operation {
+    READ, UPDATE, CREATE, LIST
+  }
+
+  final double rate = property("rate", 500);
+  final int duration = (int) property("duration", 30);
+  final int warmup = (int) property("warmup", 10);
+  final double reads = property("reads", 0.80);
+  final double updates = property("updates", 0.10);
+  final double creates = property("creates", 0.05);
+  final double lists = property("lists", 0.05);
+  final int keys = (int) property("keys", 1000);
+  final double skew = property("skew", 0.99);
+  final int collectionSize = (int) property("collectionSize", 10);
+  final int clients = (int) property("clients", 64);
+  final int pool = (int) property("pool", 20);
+
+  private final double[] keyDistribution;
+
+  public Workload() {
+    keyDistribution = new double[keys];
+    double sum = 0;
+    for (int i = 0; i < keys; i++) {
+      sum += 1 / Math.pow(i + 1, skew);
+      keyDistribution[i] = sum;
+    }
+    for (int i = 0; i < keys; i++) {
+      keyDistribution[i] /= sum;
+    }
+  }
+
+  public Operation nextOperation(Random random) {
+    double draw = random.nextDouble() * (reads + updates + creates + lists);
+    if (draw < reads) {
+      return Operation.READ;
+    }
+    if (draw < reads + updates) {
+      return Operation.UPDATE;
+    }
+    if (draw < reads + updates + creates) {
+      return Operation.CREATE;
+    }
+    return Operation.LIST;
+  }
+
+  /**
+   * @return the index of a seeded entity, the first ones being the hottest
+   */
+  public int nextKey(Random random) {
+    int index = java.util.Arrays.binarySearch(keyDistribution, random.nextDouble());
+    return Math.min(keys - 1, index < 0 ? -index - 1 : index);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "rate=%.0f/s duration=%ds warmup=%ds mix=%.2f/%.2f/%.2f/%.2f keys=%d skew=%.2f "
+            + "collectionSize=%d clients=%d pool=%d",
+        rate, duration, warmup, reads, updates, creates, lists, keys, skew, collectionSize,
+        clients, pool);
+  }
+
+  private static double property(String name, double defaultValue) {
+    String value = System.getProperty("loadtest." + name);
+    return value == null ? defaultValue : Double.parseDouble(value);
+  }
+
+}
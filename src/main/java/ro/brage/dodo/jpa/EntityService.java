@@ -18,26 +18,96 @@
  *******************************************************************************/
 package ro.brage.dodo.jpa;
 
-import java.lang.reflect.ParameterizedType;
+import java.io.IOException;
+import java.sql.SQLTimeoutException;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.SessionContext;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
+import javax.persistence.QueryTimeoutException;
+import javax.persistence.TemporalType;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ro.brage.dodo.jpa.aggregation.AggregateResultCache;
+import ro.brage.dodo.jpa.aggregation.AggregateRow;
+import ro.brage.dodo.jpa.aggregation.Aggregation;
+import ro.brage.dodo.jpa.aggregation.AggregationQueries;
+import ro.brage.dodo.jpa.archival.ArchivalScheduler;
+import ro.brage.dodo.jpa.bloom.GuidFilter;
+import ro.brage.dodo.jpa.cache.QueryCacheStatistics;
+import ro.brage.dodo.jpa.circuit.Circuit;
+import ro.brage.dodo.jpa.cache.QueryResultCache;
+import ro.brage.dodo.jpa.annotations.AggregateCache;
+import ro.brage.dodo.jpa.annotations.ArchiveUnit;
+import ro.brage.dodo.jpa.annotations.Archival;
+import ro.brage.dodo.jpa.annotations.ExistenceFilter;
+import ro.brage.dodo.jpa.annotations.QueryCache;
+import ro.brage.dodo.jpa.annotations.QueryLimits;
+import ro.brage.dodo.jpa.annotations.ReadFromReplica;
+import ro.brage.dodo.jpa.annotations.ReadOnly;
+import ro.brage.dodo.jpa.annotations.Replica;
+import ro.brage.dodo.jpa.annotations.Searchable;
+import ro.brage.dodo.jpa.annotations.Shard;
+import ro.brage.dodo.jpa.annotations.Sharded;
+import ro.brage.dodo.jpa.annotations.Unguarded;
+import ro.brage.dodo.jpa.annotations.WriteBehind;
 import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.events.ChangeEventBus;
+import ro.brage.dodo.jpa.events.ChangeEventListener;
+import ro.brage.dodo.jpa.exceptions.EntityServiceException;
+import ro.brage.dodo.jpa.limits.Deadline;
+import ro.brage.dodo.jpa.limits.Limits;
+import ro.brage.dodo.jpa.limits.ResultList;
+import ro.brage.dodo.jpa.metadata.EntityMetadata;
+import ro.brage.dodo.jpa.metadata.MetadataRegistry;
+import ro.brage.dodo.jpa.metadata.ReflectiveMetadata;
+import ro.brage.dodo.jpa.metadata.ServiceMetadata;
+import ro.brage.dodo.jpa.routing.ReadWriteRouter;
+import ro.brage.dodo.jpa.search.SearchIndex;
+import ro.brage.dodo.jpa.sharding.ShardRouter;
+import ro.brage.dodo.jpa.update.EntityDiff;
+import ro.brage.dodo.jpa.update.UpdateResult;
 import ro.brage.dodo.jpa.utils.JpaLog;
 import ro.brage.dodo.jpa.utils.QueryParams;
+import ro.brage.dodo.jpa.utils.Serializer;
+import ro.brage.dodo.jpa.writebehind.WriteBehindBuffer;
 
 /**
  * The Abstract Service
@@ -53,13 +123,37 @@ public abstract class EntityService<ENTITY extends Model> {
 
   protected final static String HINT_FETCH_GRAPH = "javax.persistence.fetchgraph";
   protected final static String HINT_LOAD_GRAPH = "javax.persistence.loadgraph";
+  protected final static String HINT_QUERY_TIMEOUT = "javax.persistence.query.timeout";
+
+  protected final static int SEARCH_INDEX_CHUNK = 5000;
 
   @PersistenceContext
   private EntityManager entityManager;
 
+  @Inject
+  @Replica
+  private Instance<EntityManager> replicaEntityManager;
+
+  @Inject
+  @ArchiveUnit
+  private Instance<EntityManager> archiveEntityManager;
+
+  @Inject
+  @Any
+  private Instance<EntityManager> shardEntityManagers;
+
   @Inject
   private Principal principal;
 
+  @Resource
+  private SessionContext sessionContext;
+
+  @Resource
+  private ManagedScheduledExecutorService executor;
+
+  @Resource
+  private TransactionSynchronizationRegistry transactionRegistry;
+
   protected CriteriaBuilder cb;
   protected CriteriaQuery<ENTITY> cq;
   protected Root<ENTITY> root;
@@ -67,141 +161,782 @@ public abstract class EntityService<ENTITY extends Model> {
 
   Class<ENTITY> entityClass;
 
+  private EntityMetadata<ENTITY> metadata;
+
+  private WriteBehindBuffer<ENTITY> writeBehindBuffer;
+
+  private ReadFromReplica readFromReplica;
+
+  private SearchIndex searchIndex;
+
+  private AggregateResultCache aggregateCache;
+
+  private Archival archival;
+
+  private QueryCache queryCache;
+
+  private QueryResultCache queryResultCache;
+
+  private Limits queryLimits;
+
+  private List<EntityManager> shards;
+
+  private ShardRouter shardRouter;
+  private Set<String> orderedQueries;
+
+  private GuidFilter guidFilter;
+
+  protected EntityService() {}
+
+  /**
+   * Used by the generated services, the entity is known without reflection and the criteria
+   * query is created on demand
+   *
+   * @param metadata the metadata of the entity
+   */
+  protected EntityService(EntityMetadata<ENTITY> metadata) {
+    this.metadata = metadata;
+    this.entityClass = metadata.getEntityClass();
+  }
+
   @PostConstruct
   protected void initialize() {
 
-    entityClass = (Class<ENTITY>) ((ParameterizedType) getClass().getGenericSuperclass())
-        .getActualTypeArguments()[0];
-
+    ServiceMetadata service = getServiceMetadata();
     cb = entityManager.getCriteriaBuilder();
-    cq = cb.createQuery(entityClass);
-    root = cq.from(entityClass);
+    if (metadata == null) {
+      entityClass = (Class<ENTITY>) service.getEntityClass();
+      metadata = MetadataRegistry.get(entityClass);
+      if (metadata == null) {
+        metadata = new ReflectiveMetadata<>(entityClass);
+      }
+      cq = cb.createQuery(entityClass);
+      root = cq.from(entityClass);
+    }
+
+    readFromReplica = service.getReadFromReplica();
+    if (readFromReplica != null && replicaEntityManager.isUnsatisfied()) {
+      LOG.warn("{} reads from the replica but no @Replica EntityManager is produced",
+          getClass().getName());
+      readFromReplica = null;
+    }
+
+    if (service.getAggregateCache() != null) {
+      aggregateCache = AggregateResultCache.forEntity(entityClass, service.getAggregateCache());
+    }
+
+    ChangeEventBus.start(executor);
+    JpaLog.schedule(executor);
+
+    Sharded sharded = service.getSharded();
+    if (sharded != null) {
+      shards = new ArrayList<>(sharded.shards());
+      for (int shard = 0; shard < sharded.shards(); shard++) {
+        Instance<EntityManager> shardEntityManager =
+            shardEntityManagers.select(new Shard.Literal(shard));
+        if (shardEntityManager.isUnsatisfied()) {
+          throw new IllegalStateException(getClass().getName() + " is sharded but no @Shard("
+              + shard + ") EntityManager is produced");
+        }
+        shards.add(shardEntityManager.get());
+      }
+      shardRouter = ShardRouter.of(sharded.shards(), sharded.virtualNodes());
+      orderedQueries = new HashSet<>(metadata.getOrderedQueries());
+    }
+
+    queryLimits = new Limits(service.getQueryLimits());
+
+    queryCache = service.getQueryCache();
+    if (queryCache != null) {
+      queryResultCache = QueryResultCache.forEntity(entityClass, queryCache);
+    }
+
+    Map<String, Integer> searchableFields = metadata.getSearchableFields();
+    List<String> aggregatableAttributes = metadata.getAggregatableAttributes();
+    if (shards != null && (!searchableFields.isEmpty() || service.getArchival() != null
+        || !aggregatableAttributes.isEmpty())) {
+      throw new IllegalStateException(getClass().getName()
+          + " is sharded, it can't be @Searchable, @Archival or have @Aggregatable attributes");
+    }
+
+    AggregationQueries.register(entityClass, aggregatableAttributes);
+    searchIndex = SearchIndex.forEntity(entityClass, searchableFields);
+    if (searchIndex != null) {
+      searchIndex.build(this::findSearchableChunk);
+    }
+
+    WriteBehind writeBehind = service.getWriteBehind();
+    if (writeBehind != null) {
+      EntityService<ENTITY> self = sessionContext.getBusinessObject(getClass());
+      writeBehindBuffer =
+          WriteBehindBuffer.forEntity(entityClass, writeBehind, executor, self::persistAll);
+    }
+
+    archival = service.getArchival();
+    if (archival != null && archiveEntityManager.isUnsatisfied()) {
+      LOG.warn("{} is archived but no @ArchiveUnit EntityManager is produced",
+          getClass().getName());
+      archival = null;
+    }
+    if (archival != null) {
+      EntityService<ENTITY> self = sessionContext.getBusinessObject(getClass());
+      ArchivalScheduler.schedule(entityClass, executor, archival.interval(), self::archive);
+    }
+
+    ExistenceFilter existenceFilter = service.getExistenceFilter();
+    if (existenceFilter != null) {
+      EntityService<ENTITY> self = sessionContext.getBusinessObject(getClass());
+      guidFilter = GuidFilter.forEntity(entityClass, existenceFilter, executor,
+          (after, max) -> self.getGuidsAfter(after, max, true));
+    }
   }
 
   /**
-   * Create a new ENTITY
+   * The generated services return the metadata they were generated with, the other services
+   * read their annotations
+   *
+   * @return the metadata of the service
+   */
+  protected ServiceMetadata getServiceMetadata() {
+    return ServiceMetadata.of(getClass());
+  }
+
+  @PreDestroy
+  protected void destroy() {
+    if (writeBehindBuffer != null) {
+      writeBehindBuffer.flush();
+    }
+  }
+
+  /**
+   * Create a new ENTITY. In the {@link WriteBehind} mode the entity is only buffered and it's
+   * persisted later by the flusher.
    * 
    * @param object the ENTITY to be persisted
    * @return the object
    */
   @TransactionAttribute(TransactionAttributeType.REQUIRED)
   public ENTITY create(ENTITY object) {
+    object.setGuid(UUID.randomUUID().toString());
+    object.setCreatedOn(new Date());
+    object.setUpdatedOn(object.getCreatedOn());
     object.setCreatedBy(principal.getName());
     object.setUpdatedBy(principal.getName());
-    entityManager.persist(object);
+    pinToPrimary();
+    if (writeBehindBuffer != null) {
+      return writeBehindBuffer.enqueue(object);
+    }
+    getEntityManager(object.getGuid()).persist(object);
+    invalidateQueryCache();
     return object;
   }
 
   /**
-   * Find an entity by it's GUID
+   * Persist a batch of buffered entities within a new transaction
+   *
+   * @param batch the entities to be persisted
+   * @param replay TRUE if the entities were recovered from the journal and may already exist
+   */
+  @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+  public void persistAll(List<ENTITY> batch, boolean replay) {
+    for (ENTITY object : batch) {
+      EntityManager shardEntityManager = getEntityManager(object.getGuid());
+      if (replay && shardEntityManager.find(entityClass, object.getGuid()) != null) {
+        continue;
+      }
+      shardEntityManager.persist(object);
+    }
+    for (EntityManager shardEntityManager : shards == null ? Arrays.asList(entityManager)
+        : shards) {
+      shardEntityManager.flush();
+      shardEntityManager.clear();
+    }
+    invalidateQueryCache();
+  }
+
+  /**
+   * Run some work within one transaction, the operations of the service called by the work join
+   * it. The entities are flushed together at the commit, so the persistence provider can batch
+   * the statements of the same type.
+   *
+   * @param work the work
+   * @return the result of the work
+   */
+  @TransactionAttribute(TransactionAttributeType.REQUIRED)
+  @Unguarded
+  public <T> T inTransaction(Supplier<T> work) {
+    return work.get();
+  }
+
+  /**
+   * Mark the current transaction for rollback without failing the caller
+   */
+  @TransactionAttribute(TransactionAttributeType.MANDATORY)
+  @Unguarded
+  public void setRollbackOnly() {
+    sessionContext.setRollbackOnly();
+  }
+
+  /**
+   * @return TRUE if the service runs in the {@link WriteBehind} mode
+   */
+  @Unguarded
+  public boolean isWriteBehind() {
+    return writeBehindBuffer != null;
+  }
+
+  /**
+   * Find an entity by it's GUID, falling back to the archive if the service is annotated with
+   * {@link Archival}
    *
    * @param guid the GUID
    * @return the ENTITY object
    */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
   public ENTITY findByGuid(Object guid) {
-    return entityManager.find(entityClass, guid);
+    if (!mightExist(guid)) {
+      return null;
+    }
+    ENTITY found =
+        call(() -> getReadEntityManager(guid).find(entityClass, guid, timeLimit()));
+    if (found == null && archival != null) {
+      found = call(() -> archiveEntityManager.get().find(entityClass, guid, timeLimit()));
+    }
+    return found;
   }
 
   /**
-   * Update the entity
+   * Update the entity with the attributes of another one, see
+   * {@link #updateChanged(Object, Consumer)}
    *
-   * @param guid
-   * @param dto
-   * @return
+   * @param guid the GUID
+   * @param entity the new state, the attributes of {@link Model} are ignored
+   * @return the updated entity, or null if it doesn't exist
    */
   @TransactionAttribute(TransactionAttributeType.REQUIRED)
   public ENTITY updateByGuid(Object guid, ENTITY entity) {
-    ENTITY objectToUpdate = findByGuid(guid);
-    if (objectToUpdate != null) {
+    UpdateResult<ENTITY> result =
+        updateChanged(guid, target -> EntityDiff.forEntity(metadata).replace(entity, target));
+    return result == null ? null : result.getEntity();
+  }
+
+  /**
+   * Update only the changed attributes of an entity. The update is applied to a copy of the
+   * current state, e.g. <code>mapper.updateEntity(dto, target)</code>, and only the attributes
+   * which differ are written to the managed entity. If none differs nothing is written, so neither
+   * <code>updatedOn</code> nor <code>updatedBy</code> changes. The copy loads the lazy collections
+   * of the entity.
+   *
+   * @param guid the GUID
+   * @param update the update of the copy
+   * @return the entity and its changed attributes, or null if it doesn't exist
+   */
+  @TransactionAttribute(TransactionAttributeType.REQUIRED)
+  public UpdateResult<ENTITY> updateChanged(Object guid, Consumer<ENTITY> update) {
+    if (!mightExist(guid)) {
+      return null;
+    }
+    ENTITY objectToUpdate =
+        call(() -> getEntityManager(guid).find(entityClass, guid, timeLimit()));
+    if (objectToUpdate == null) {
+      return null;
+    }
+    EntityDiff<ENTITY> diff = EntityDiff.forEntity(metadata);
+    ENTITY incoming = diff.copy(objectToUpdate);
+    update.accept(incoming);
+    List<String> changed = diff.diff(objectToUpdate, incoming);
+    if (!changed.isEmpty()) {
+      diff.apply(changed, incoming, objectToUpdate);
       objectToUpdate.setUpdatedBy(principal.getName());
-      return create(objectToUpdate);
+      pinToPrimary();
+      invalidateQueryCache();
     }
-    return null;
+    return new UpdateResult<>(objectToUpdate, changed);
   }
 
   /**
    * Delete an entity by it's GUID
    *
    * @param guid the GUID
-   * @return TRUE if the entity is deleted, otherwise FALSE
+   * @return TRUE if the entity is deleted, FALSE if it doesn't exist
+   * @throws EntityServiceException with {@link JpaErrorKeys#FAILED_TO_DELETE_ENTITY} if the
+   *         database failed
    */
   @TransactionAttribute(TransactionAttributeType.REQUIRED)
   public boolean deleteByGuid(Object guid) {
+    if (!mightExist(guid)) {
+      return false;
+    }
     try {
-      ENTITY toDelete = findByGuid(guid);
-      entityManager.remove(toDelete);
+      EntityManager shardEntityManager = getEntityManager(guid);
+      ENTITY toDelete = shardEntityManager.find(entityClass, guid, timeLimit());
+      if (toDelete == null) {
+        return false;
+      }
+      shardEntityManager.remove(toDelete);
+      pinToPrimary();
+      invalidateQueryCache();
       return true;
-    } catch (Exception e) {
-      LOG.error("Couldn't delete the entity {}", e.getMessage());
-      return false;
+    } catch (PersistenceException e) {
+      JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_DELETE_ENTITY, e, false);
+      throw new EntityServiceException(JpaErrorKeys.FAILED_TO_DELETE_ENTITY,
+          entityClass.getSimpleName() + " " + guid + " couldn't be deleted", e);
     }
   }
 
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
   public ENTITY loadByGuid(String guid) {
-    cq.where(cb.equal(root.get(Model.GUID), guid));
-    typedQuery = entityManager.createQuery(cq);
-    typedQuery.setHint(HINT_LOAD_GRAPH, entityClass.getSimpleName() + ".loadByGuid");
-    return typedQuery.getSingleResult();
+    if (!mightExist(guid)) {
+      throw new NoResultException(entityClass.getSimpleName() + " " + guid + " doesn't exist");
+    }
+    try {
+      return loadByGuid(getReadEntityManager(guid), guid);
+    } catch (NoResultException e) {
+      if (archival == null) {
+        throw e;
+      }
+      return loadByGuid(archiveEntityManager.get(), guid);
+    }
+  }
+
+  /**
+   * Check the GUID against the {@link ExistenceFilter} of the service, without querying the
+   * database
+   *
+   * @param guid the GUID
+   * @return FALSE if no entity has the GUID, TRUE if it might exist or the service has no filter
+   */
+  @Unguarded
+  public boolean mightExist(Object guid) {
+    return guidFilter == null || guid == null || guidFilter.mightContain(String.valueOf(guid));
+  }
+
+  private ENTITY loadByGuid(EntityManager readEntityManager, String guid) {
+    CriteriaBuilder builder = readEntityManager.getCriteriaBuilder();
+    CriteriaQuery<ENTITY> query = builder.createQuery(entityClass);
+    query.where(builder.equal(query.from(entityClass).get(Model.GUID), guid));
+    typedQuery = timed(readEntityManager.createQuery(query));
+    typedQuery.setHint(HINT_LOAD_GRAPH, metadata.getLoadGraph());
+    return call(typedQuery::getSingleResult);
+  }
+
+  /**
+   * Find the entities by their GUIDs within one query
+   *
+   * @param guids the GUIDs
+   * @return the entities found, in the order of the GUIDs
+   */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public List<ENTITY> findByGuids(List<String> guids) {
+    if (guids.isEmpty()) {
+      return new ArrayList<>();
+    }
+    String jpql = "SELECT e FROM " + metadata.getEntityName() + " e WHERE e.guid IN :guids";
+    List<ENTITY> found;
+    if (shards == null) {
+      found = call(() -> timed(getReadEntityManager().createQuery(jpql, entityClass))
+          .setParameter("guids", guids).getResultList());
+    } else {
+      found = flatten(scatter(shardEntityManager -> {
+        List<String> shardGuids = new ArrayList<>();
+        guids.forEach(guid -> {
+          if (shards.get(shardRouter.shardOf(guid)) == shardEntityManager) {
+            shardGuids.add(guid);
+          }
+        });
+        return shardGuids.isEmpty() ? new ArrayList<ENTITY>()
+            : call(() -> timed(shardEntityManager.createQuery(jpql, entityClass))
+                .setParameter("guids", shardGuids).getResultList());
+      }));
+    }
+
+    Map<String, ENTITY> byGuid = new HashMap<>();
+    found.forEach(entity -> byGuid.put(entity.getGuid(), entity));
+    List<ENTITY> ordered = new ArrayList<>(found.size());
+    for (String guid : guids) {
+      ENTITY entity = byGuid.get(guid);
+      if (entity != null) {
+        ordered.add(entity);
+      }
+    }
+    return ordered;
+  }
+
+  /**
+   * Search the {@link Searchable} fields of the entity
+   *
+   * @param text the text typed by the user, every word matches as a prefix
+   * @param maxResults the maximum number of entities, capped by the {@link QueryLimits}
+   * @return the entities, best match first
+   */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public List<ENTITY> search(String text, int maxResults) {
+    if (searchIndex == null) {
+      throw new EntityServiceException(JpaErrorKeys.NOT_SEARCHABLE,
+          entityClass.getSimpleName() + " has no @Searchable field");
+    }
+    int limit = Limits.effective(queryLimits).getMaxResults();
+    return findByGuids(
+        searchIndex.search(text, limit > 0 ? Math.min(maxResults, limit) : maxResults));
   }
 
   /**
-   * Get all entities using namedQuery
+   * Run an aggregation in the database, e.g. the number of entities per status and per day. The
+   * result is cached if the service is annotated with {@link AggregateCache}.
+   *
+   * @param aggregation the aggregation
+   * @return the rows, ordered by their keys
+   */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public List<AggregateRow> aggregate(Aggregation aggregation) {
+    AggregationQueries.validate(entityClass, aggregation);
+    if (aggregateCache == null) {
+      return runAggregation(aggregation);
+    }
+    return aggregateCache.get(aggregation.getKey(), () -> runAggregation(aggregation));
+  }
+
+  /**
+   * Get all entities using namedQuery, within the {@link QueryLimits}
    *
    * @return return a list of entities
    */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
   public List<ENTITY> getAll() {
-    Query query = entityManager.createNamedQuery(entityClass.getSimpleName() + ".findAll");
-    return query.getResultList();
+    checkShardable("findAll");
+    return fetch(readEntityManager -> readEntityManager
+        .createNamedQuery(metadata.getQueryName("findAll")));
   }
 
+  /**
+   * Get a page of entities ordered by their GUIDs, the next page starts after the last GUID of
+   * the previous one. If the service is {@link Sharded} every shard reads a page and the pages are
+   * merged.
+   *
+   * @param after the last GUID of the previous page, null for the first page
+   * @param max the size of the page
+   * @return the entities
+   */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public List<ENTITY> getAllAfter(String after, int max) {
+    Function<EntityManager, List<ENTITY>> page = readEntityManager -> {
+      TypedQuery<ENTITY> query = readEntityManager.createQuery("SELECT e FROM "
+          + metadata.getEntityName() + " e" + (after == null ? "" : " WHERE e.guid > :after")
+          + " ORDER BY e.guid", entityClass);
+      if (after != null) {
+        query.setParameter("after", after);
+      }
+      return query.setMaxResults(max).getResultList();
+    };
+    if (shards == null) {
+      return page.apply(getReadEntityManager());
+    }
+    return ShardRouter.mergeByKey(scatter(page), ENTITY::getGuid, max);
+  }
+
+  /**
+   * Get a page of GUIDs in order, read from the primary database. The next page starts after the
+   * last GUID of the previous one.
+   *
+   * @param after the last GUID of the previous page, null for the first page
+   * @param max the size of the page
+   * @param includeArchived TRUE for reading also the archive
+   * @return the GUIDs
+   */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public List<String> getGuidsAfter(String after, int max, boolean includeArchived) {
+    Function<EntityManager, List<String>> page = guidEntityManager -> {
+      TypedQuery<String> query = guidEntityManager.createQuery("SELECT e.guid FROM "
+          + metadata.getEntityName() + " e" + (after == null ? "" : " WHERE e.guid > :after")
+          + " ORDER BY e.guid", String.class);
+      if (after != null) {
+        query.setParameter("after", after);
+      }
+      return query.setMaxResults(max).getResultList();
+    };
+    List<List<String>> pages = new ArrayList<>();
+    if (shards == null) {
+      pages.add(page.apply(entityManager));
+    } else {
+      pages.addAll(scatter(page));
+    }
+    if (includeArchived && archival != null) {
+      pages.add(page.apply(archiveEntityManager.get()));
+    }
+    return ShardRouter.mergeByKey(pages, guid -> guid, max);
+  }
+
+  /**
+   * Get all entities using namedQuery, including the archived ones if asked
+   *
+   * @param includeArchived TRUE for reading also the archive
+   * @return return a list of entities
+   */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public List<ENTITY> getAll(boolean includeArchived) {
+    List<ENTITY> all = getAll();
+    if (includeArchived && archival != null) {
+      all = new ArrayList<>(all);
+      all.addAll(call(() -> timed(archiveEntityManager.get()
+          .createNamedQuery(metadata.getQueryName("findAll"), entityClass)).getResultList()));
+    }
+    return all;
+  }
+
+  /**
+   * @return the primary EntityManager, or the read one within a {@link ReadOnly} method
+   */
+  @Unguarded
   public EntityManager getEntityManager() {
-    return entityManager;
+    return ReadWriteRouter.isReadOnly() ? getReadEntityManager() : entityManager;
+  }
+
+  /**
+   * Get the EntityManager for reading. It's the replica if the service is annotated with
+   * {@link ReadFromReplica}, unless a transaction is active or the caller is pinned to the primary
+   * after a write.
+   *
+   * @return the EntityManager
+   */
+  @Unguarded
+  public EntityManager getReadEntityManager() {
+    if (readFromReplica == null
+        || transactionRegistry.getTransactionStatus() == Status.STATUS_ACTIVE
+        || ReadWriteRouter.isPinned()) {
+      return entityManager;
+    }
+    return replicaEntityManager.get();
+  }
+
+  /**
+   * Get the EntityManager of a GUID, it's the one of its shard if the service is {@link Sharded}
+   *
+   * @param guid the GUID
+   * @return the EntityManager
+   */
+  @Unguarded
+  public EntityManager getEntityManager(Object guid) {
+    if (shards == null) {
+      return entityManager;
+    }
+    return shards.get(shardRouter.shardOf(String.valueOf(guid)));
+  }
+
+  /**
+   * Get the EntityManager for reading a GUID, it's the one of its shard if the service is
+   * {@link Sharded}
+   *
+   * @param guid the GUID
+   * @return the EntityManager
+   */
+  @Unguarded
+  public EntityManager getReadEntityManager(Object guid) {
+    return shards == null ? getReadEntityManager() : getEntityManager(guid);
+  }
+
+  /**
+   * Run a read on every shard, in parallel unless a transaction is active. The limits and the
+   * {@link Deadline} of the call apply on every shard.
+   *
+   * @param read the read
+   * @return the results of the shards, in the order of the shards
+   */
+  protected <T> List<T> scatter(Function<EntityManager, T> read) {
+    List<T> results = new ArrayList<>(shards.size());
+    if (transactionRegistry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+      shards.forEach(shardEntityManager -> results.add(read.apply(shardEntityManager)));
+      return results;
+    }
+    Limits limits = Limits.effective(queryLimits);
+    Long deadline = Deadline.get();
+    List<Future<T>> futures = new ArrayList<>(shards.size());
+    shards.forEach(shardEntityManager -> futures.add(executor.submit(() -> Deadline.at(deadline,
+        () -> Limits.apply(limits, () -> read.apply(shardEntityManager))))));
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (ExecutionException e) {
+      futures.forEach(future -> future.cancel(true));
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new PersistenceException(e.getCause());
+    } catch (InterruptedException e) {
+      futures.forEach(future -> future.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new PersistenceException(e);
+    }
+    return results;
+  }
+
+  /**
+   * The results of the shards are concatenated, so an ordered named query can't run on a
+   * {@link Sharded} service
+   *
+   * @throws EntityServiceException with {@link JpaErrorKeys#NOT_SHARDABLE} if the query is
+   *         ordered
+   */
+  private void checkShardable(String namedQuery) {
+    if (shards != null && orderedQueries.contains(metadata.getQueryName(namedQuery))) {
+      throw new EntityServiceException(JpaErrorKeys.NOT_SHARDABLE,
+          namedQuery + " is ordered, use getAllAfter for reading the shards in order");
+    }
+  }
+
+  private static <E> List<E> flatten(List<List<E>> lists) {
+    List<E> flat = new ArrayList<>();
+    lists.forEach(flat::addAll);
+    return flat;
   }
 
+  @Unguarded
   public CriteriaBuilder getCB() {
     return cb;
   }
 
+  @Unguarded
   public Root<ENTITY> getRoot() {
+    if (root == null) {
+      cq = cb.createQuery(entityClass);
+      root = cq.from(entityClass);
+    }
     return root;
   }
 
   /**
-   * Get a single entity using a namedQuery
+   * Get a single entity using a namedQuery, the result is cached if the query is listed by
+   * {@link QueryCache}
    *
    * @param namedQuery the name of the query
    * @param parameters the QueryParams object
    * @return a list of entities
    */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
   public ENTITY getSingleResult(String namedQuery, QueryParams parameters) {
-    Query query = createQueryParam(namedQuery, parameters);
+    if (queryResultCache != null && queryResultCache.isCached(namedQuery)) {
+      List<ENTITY> results = getCachedResults(namedQuery, parameters);
+      return results.size() == 1 ? results.get(0) : null;
+    }
     try {
+      if (shards != null) {
+        List<ENTITY> found = flatten(scatter(shardEntityManager -> {
+          Query query = createQueryParam(shardEntityManager, namedQuery, parameters);
+          limit(query);
+          return (List<ENTITY>) query.getResultList();
+        }));
+        if (found.size() > 1) {
+          throw new NonUniqueResultException(found.size() + " results of " + namedQuery);
+        }
+        return found.isEmpty() ? null : found.get(0);
+      }
+      Query query = createQueryParam(namedQuery, parameters);
+      limit(query);
       return (ENTITY) query.getSingleResult();
+    } catch (EntityServiceException e) {
+      throw e;
     } catch (Exception e) {
+      if (isTimeout(e)) {
+        throw timedOut(e);
+      }
+      Circuit.failed(e);
       JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_FIND_ENTITY, e, null);
     }
     return null;
   }
 
   /**
-   * Get a list of entities using a namedQuery
+   * Get a list of entities using a namedQuery, the result is cached if the query is listed by
+   * {@link QueryCache}
    *
    * @param namedQuery the name of the query
    * @param parameters the QueryParams object
    * @return a list of entities
    */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
   public List<ENTITY> getResults(String namedQuery, QueryParams parameters) {
-    Query query = createQueryParam(namedQuery, parameters);
-
+    if (queryResultCache != null && queryResultCache.isCached(namedQuery)) {
+      return getCachedResults(namedQuery, parameters);
+    }
+    checkShardable(namedQuery);
     try {
-      return query.getResultList();
+      return fetch(
+          readEntityManager -> createQueryParam(readEntityManager, namedQuery, parameters));
+    } catch (EntityServiceException e) {
+      throw e;
     } catch (Exception e) {
+      Circuit.failed(e);
       return (List<ENTITY>) JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_FIND_ENTITIES, e,
           new ArrayList<>());
     }
 
   }
 
+  /**
+   * Get a list of entities using a namedQuery, including the archived ones if asked
+   *
+   * @param namedQuery the name of the query
+   * @param parameters the QueryParams object
+   * @param includeArchived TRUE for reading also the archive
+   * @return a list of entities
+   */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public List<ENTITY> getResults(String namedQuery, QueryParams parameters,
+      boolean includeArchived) {
+    List<ENTITY> results = getResults(namedQuery, parameters);
+    if (includeArchived && archival != null) {
+      try {
+        results = new ArrayList<>(results);
+        results.addAll(timed(
+            createQueryParam(archiveEntityManager.get(), namedQuery, parameters)).getResultList());
+      } catch (EntityServiceException e) {
+        throw e;
+      } catch (Exception e) {
+        if (isTimeout(e)) {
+          throw timedOut(e);
+        }
+        Circuit.failed(e);
+        JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_FIND_ENTITIES, e, null);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * @return the hits and misses of the queries cached by {@link QueryCache}
+   */
+  @Unguarded
+  public List<QueryCacheStatistics> getQueryCacheStatistics() {
+    return queryResultCache == null ? new ArrayList<>() : queryResultCache.getStatistics();
+  }
+
+  /**
+   * Invalidate the results cached by {@link QueryCache}, it's called by every write of the
+   * service. The results are invalidated once more after the transaction completes, as a result
+   * read meanwhile may not see the write yet.
+   */
+  protected void invalidateQueryCache() {
+    if (!QueryResultCache.invalidate(entityClass)
+        || transactionRegistry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+      return;
+    }
+    String key = QueryResultCache.class.getName() + ":" + entityClass.getName();
+    if (transactionRegistry.getResource(key) == null) {
+      transactionRegistry.putResource(key, Boolean.TRUE);
+      Class<ENTITY> invalidated = entityClass;
+      transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+
+        @Override
+        public void beforeCompletion() {}
+
+        @Override
+        public void afterCompletion(int status) {
+          QueryResultCache.invalidate(invalidated);
+        }
+      });
+    }
+  }
+
   /**
    * Get total nr. of items
    * 
@@ -211,13 +946,133 @@ public abstract class EntityService<ENTITY extends Model> {
    * 
    * @return
    */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
   public long getCount() {
 
-    String entityName = entityClass.getSimpleName().toLowerCase();
-    Query query = entityManager.createQuery(
-        "SELECT COUNT(" + entityName + ") FROM " + entityClass.getSimpleName() + " " + entityName);
+    String entityName = metadata.getEntityName().toLowerCase();
+    String jpql =
+        "SELECT COUNT(" + entityName + ") FROM " + metadata.getEntityName() + " " + entityName;
+    if (shards != null) {
+      long count = 0;
+      for (Object shardCount : scatter(shardEntityManager -> call(
+          () -> timed(shardEntityManager.createQuery(jpql)).getSingleResult()))) {
+        count += (long) shardCount;
+      }
+      return count;
+    }
+    Query query = timed(getReadEntityManager().createQuery(jpql));
 
-    return (long) query.getSingleResult();
+    return (long) call(query::getSingleResult);
+  }
+
+  /**
+   * Get total nr. of items, including the archived ones if asked
+   *
+   * @param includeArchived TRUE for counting also the archive
+   * @return the number of items
+   */
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public long getCount(boolean includeArchived) {
+    long count = getCount();
+    if (includeArchived && archival != null) {
+      count += call(() -> timed(archiveEntityManager.get()
+          .createQuery("SELECT COUNT(e) FROM " + metadata.getEntityName() + " e", Long.class))
+          .getSingleResult());
+    }
+    return count;
+  }
+
+  /**
+   * Move the entities older than the {@link Archival} age to the archive, it's run periodically
+   * by the archival job
+   *
+   * @return the number of archived entities
+   */
+  @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+  public int archive() {
+    if (archival == null) {
+      return 0;
+    }
+    Date cutoff = new Date(System.currentTimeMillis() - archival.olderThanDays() * 86400000L);
+    return archiveOlderThan(cutoff);
+  }
+
+  /**
+   * Move the entities created before a date to the archive, chunk by chunk. Every chunk is first
+   * merged into the archive and then removed, each step within its own transaction, so an
+   * interrupted run is safely continued by the next one. The entities updated in between are left
+   * for the next run, which archives their new state.
+   *
+   * @param cutoff the date
+   * @return the number of archived entities
+   */
+  @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+  public int archiveOlderThan(Date cutoff) {
+    EntityService<ENTITY> self = sessionContext.getBusinessObject(getClass());
+    int archived = 0;
+    int skipped = 0;
+    List<ENTITY> chunk;
+    do {
+      chunk = entityManager
+          .createQuery("SELECT e FROM " + metadata.getEntityName()
+              + " e WHERE e.createdOn < :cutoff ORDER BY e.createdOn, e.guid", entityClass)
+          .setParameter("cutoff", cutoff, TemporalType.TIMESTAMP).setFirstResult(skipped)
+          .setMaxResults(archival.batchSize()).getResultList();
+      if (chunk.isEmpty()) {
+        break;
+      }
+      Map<String, Date> versions = new LinkedHashMap<>();
+      chunk.forEach(entity -> versions.put(entity.getGuid(), entity.getUpdatedOn()));
+
+      self.copyToArchive(chunk);
+      int removed = self.removeArchived(versions);
+      archived += removed;
+      skipped += chunk.size() - removed;
+    } while (chunk.size() == archival.batchSize());
+    return archived;
+  }
+
+  /**
+   * Merge the entities into the archive, merging twice the same entity is harmless
+   *
+   * @param entities the entities
+   */
+  @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+  public void copyToArchive(List<ENTITY> entities) {
+    EntityManager archive = archiveEntityManager.get();
+    entities.forEach(archive::merge);
+    archive.flush();
+  }
+
+  /**
+   * Remove the archived entities from the working table, the removals are published as
+   * {@link ro.brage.dodo.jpa.enums.ChangeOperation#ARCHIVE}. The entities are locked and only the
+   * ones still having the archived <code>updatedOn</code> are removed.
+   *
+   * @param versions the GUIDs of the archived entities, with their <code>updatedOn</code>
+   * @return the number of entities no longer in the working table
+   */
+  @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+  public int removeArchived(Map<String, Date> versions) {
+    ChangeEventListener.archiving();
+    int removed = 0;
+    for (Map.Entry<String, Date> version : versions.entrySet()) {
+      ENTITY archived =
+          entityManager.find(entityClass, version.getKey(), LockModeType.PESSIMISTIC_WRITE);
+      if (archived == null) {
+        removed++;
+      } else if (sameTime(archived.getUpdatedOn(), version.getValue())) {
+        entityManager.remove(archived);
+        removed++;
+      }
+    }
+    invalidateQueryCache();
+    return removed;
+  }
+
+  private static boolean sameTime(Date current, Date archived) {
+    return current == null ? archived == null
+        : archived != null && current.getTime() == archived.getTime();
   }
 
   /**
@@ -228,10 +1083,22 @@ public abstract class EntityService<ENTITY extends Model> {
    * @return a Query object
    */
   protected Query createQueryParam(String namedQuery, QueryParams parameters) {
+    return createQueryParam(getReadEntityManager(), namedQuery, parameters);
+  }
+
+  /**
+   * Create the QueryParam on the given EntityManager
+   *
+   * @param entityManager the EntityManager
+   * @param namedQuery the name of the query
+   * @param parameters the QueryParams object
+   * @return a Query object
+   */
+  protected Query createQueryParam(EntityManager entityManager, String namedQuery,
+      QueryParams parameters) {
     if (namedQuery != null && parameters != null) {
 
-      Query query =
-          getEntityManager().createNamedQuery(entityClass.getSimpleName() + "." + namedQuery);
+      Query query = entityManager.createNamedQuery(metadata.getQueryName(namedQuery));
       parameters.getParams().forEach((key, value) -> {
         if (value != null) {
           query.setParameter(key, value);
@@ -243,7 +1110,220 @@ public abstract class EntityService<ENTITY extends Model> {
     return null;
   }
 
+  @Unguarded
   public Class<ENTITY> getEntityClass() {
     return entityClass;
   }
+
+  @Unguarded
+  public EntityMetadata<ENTITY> getMetadata() {
+    return metadata;
+  }
+
+  private List<AggregateRow> runAggregation(Aggregation aggregation) {
+    EntityManager readEntityManager = getReadEntityManager();
+    Query query = timed(AggregationQueries.createQuery(readEntityManager,
+        metadata.getQueryName("aggregate:" + aggregation.getShape()),
+        aggregation.toJpql(metadata.getEntityName())));
+    if (aggregation.getFrom() != null) {
+      query.setParameter("from", aggregation.getFrom(), TemporalType.TIMESTAMP);
+    }
+    if (aggregation.getTo() != null) {
+      query.setParameter("to", aggregation.getTo(), TemporalType.TIMESTAMP);
+    }
+    return aggregation.toRows(call(query::getResultList));
+  }
+
+  /**
+   * Get the results of a cached query, either deserializing the snapshot or loading the entities
+   * by their GUIDs. A failed query isn't cached.
+   */
+  private List<ENTITY> getCachedResults(String namedQuery, QueryParams parameters) {
+    Object cached = queryResultCache.get(namedQuery, parameters);
+    if (cached instanceof byte[]) {
+      try {
+        return (List<ENTITY>) Serializer.deserialize((byte[]) cached);
+      } catch (IOException | ClassNotFoundException e) {
+        JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_FIND_ENTITIES, e, null);
+      }
+    } else if (cached != null) {
+      return findByGuids((List<String>) cached);
+    }
+
+    long version = queryResultCache.getVersion();
+    List<ENTITY> results;
+    try {
+      results =
+          fetch(readEntityManager -> createQueryParam(readEntityManager, namedQuery, parameters));
+    } catch (EntityServiceException e) {
+      throw e;
+    } catch (Exception e) {
+      Circuit.failed(e);
+      return (List<ENTITY>) JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_FIND_ENTITIES, e,
+          new ArrayList<>());
+    }
+
+    Object value;
+    if (queryCache.snapshots()) {
+      try {
+        value = Serializer.serialize(new ArrayList<>(results));
+      } catch (IOException e) {
+        JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_FIND_ENTITIES, e, null);
+        return results;
+      }
+    } else {
+      List<String> guids = new ArrayList<>(results.size());
+      results.forEach(entity -> guids.add(entity.getGuid()));
+      value = guids;
+    }
+    if (!ResultList.isTruncated(results)) {
+      queryResultCache.put(namedQuery, parameters, version, value, results.size());
+    }
+    return results;
+  }
+
+  /**
+   * Apply the {@link QueryLimits}, or the {@link Limits} of the call, to a query. The timeout is
+   * shortened to the time left by the running operation, see {@link Deadline}.
+   */
+  private Limits limit(Query query) {
+    Limits limits = Limits.effective(queryLimits);
+    timed(query);
+    if (limits.getMaxResults() > 0) {
+      query.setMaxResults(limits.getMaxResults() + 1);
+    }
+    return limits;
+  }
+
+  /**
+   * Run a query on the read EntityManager, or on every shard if the service is {@link Sharded}
+   */
+  private List<ENTITY> fetch(Function<EntityManager, Query> query) {
+    if (shards == null) {
+      return fetch(query.apply(getReadEntityManager()));
+    }
+    List<List<ENTITY>> pages =
+        scatter(shardEntityManager -> fetch(query.apply(shardEntityManager)));
+    List<ENTITY> merged = flatten(pages);
+    int maxResults = Limits.effective(queryLimits).getMaxResults();
+    boolean truncated = pages.stream().anyMatch(ResultList::isTruncated);
+    if (maxResults > 0 && merged.size() > maxResults) {
+      if (!Limits.effective(queryLimits).isTruncate()) {
+        throw new EntityServiceException(JpaErrorKeys.TOO_MANY_RESULTS,
+            entityClass.getSimpleName() + " has more than " + maxResults + " results");
+      }
+      return new ResultList<>(merged.subList(0, maxResults), true);
+    }
+    return truncated ? new ResultList<>(merged, true) : merged;
+  }
+
+  /**
+   * Run a query within its limits, one more result than the maximum is read for knowing if the
+   * results are complete
+   */
+  private List<ENTITY> fetch(Query query) {
+    Limits limits = limit(query);
+    List<ENTITY> results;
+    try {
+      results = query.getResultList();
+    } catch (PersistenceException e) {
+      if (isTimeout(e)) {
+        throw timedOut(e);
+      }
+      throw e;
+    }
+    int maxResults = limits.getMaxResults();
+    if (maxResults > 0 && results.size() > maxResults) {
+      if (!limits.isTruncate()) {
+        throw new EntityServiceException(JpaErrorKeys.TOO_MANY_RESULTS,
+            entityClass.getSimpleName() + " has more than " + maxResults + " results");
+      }
+      return new ResultList<>(results.subList(0, maxResults), true);
+    }
+    return results;
+  }
+
+  /**
+   * The hints of a database call: the timeout of the {@link QueryLimits}, shortened to the time
+   * left by the running operation
+   *
+   * @throws EntityServiceException with {@link JpaErrorKeys#OPERATION_TIMEOUT} if the deadline
+   *         of the operation passed
+   */
+  private Map<String, Object> timeLimit() {
+    Deadline.check();
+    long timeout = Limits.effective(queryLimits).getTimeout();
+    long remaining = Deadline.remaining();
+    if (remaining > 0 && (timeout == 0 || remaining < timeout)) {
+      timeout = remaining;
+    }
+    return timeout > 0 ? Collections.singletonMap(HINT_QUERY_TIMEOUT, (int) timeout)
+        : Collections.emptyMap();
+  }
+
+  /**
+   * Apply the {@link #timeLimit()} to a query
+   */
+  private <Q extends Query> Q timed(Q query) {
+    timeLimit().forEach(query::setHint);
+    return query;
+  }
+
+  /**
+   * Run a database call, its timeout fails with {@link JpaErrorKeys#QUERY_TIMEOUT} or
+   * {@link JpaErrorKeys#OPERATION_TIMEOUT}
+   */
+  private <T> T call(Supplier<T> call) {
+    try {
+      return call.get();
+    } catch (PersistenceException e) {
+      if (isTimeout(e)) {
+        throw timedOut(e);
+      }
+      throw e;
+    }
+  }
+
+  private boolean isTimeout(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof QueryTimeoutException || cause instanceof SQLTimeoutException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private EntityServiceException timedOut(Exception e) {
+    if (Deadline.isExpired()) {
+      return new EntityServiceException(JpaErrorKeys.OPERATION_TIMEOUT,
+          "The operation ran out of time", e);
+    }
+    return new EntityServiceException(JpaErrorKeys.QUERY_TIMEOUT,
+        entityClass.getSimpleName() + " query timed out", e);
+  }
+
+  /**
+   * Read the searchable fields of the entities following a GUID, for building the index
+   */
+  private List<Object[]> findSearchableChunk(String after) {
+    StringBuilder jpql = new StringBuilder("SELECT e.guid");
+    searchIndex.getFieldNames().forEach(field -> jpql.append(", e.").append(field));
+    jpql.append(" FROM ").append(metadata.getEntityName()).append(" e");
+    if (after != null) {
+      jpql.append(" WHERE e.guid > :after");
+    }
+    jpql.append(" ORDER BY e.guid");
+
+    Query query = entityManager.createQuery(jpql.toString()).setMaxResults(SEARCH_INDEX_CHUNK);
+    if (after != null) {
+      query.setParameter("after", after);
+    }
+    return query.getResultList();
+  }
+
+  private void pinToPrimary() {
+    if (readFromReplica != null) {
+      ReadWriteRouter.pin(readFromReplica.pinAfterWrite());
+    }
+  }
 }
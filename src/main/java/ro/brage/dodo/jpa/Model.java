@@ -22,6 +22,7 @@ import java.io.Serializable;
 import java.util.Date;
 import java.util.UUID;
 import javax.persistence.Column;
+import javax.persistence.EntityListeners;
 import javax.persistence.Id;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.PrePersist;
@@ -29,6 +30,9 @@ import javax.persistence.PreUpdate;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.persistence.Transient;
+import ro.brage.dodo.jpa.bloom.GuidFilterListener;
+import ro.brage.dodo.jpa.events.ChangeEventListener;
+import ro.brage.dodo.jpa.search.SearchIndexListener;
 
 /**
  * The model class provides basic fields for persisting an entity
@@ -36,6 +40,8 @@ import javax.persistence.Transient;
  * @author Dorin Brage
  */
 @MappedSuperclass
+@EntityListeners({SearchIndexListener.class, ChangeEventListener.class,
+    GuidFilterListener.class})
 public class Model implements Serializable {
 
   private static final long serialVersionUID = 7195951657243537422L;
@@ -43,6 +49,12 @@ public class Model implements Serializable {
   @Transient
   public final static String GUID = "guid";
 
+  @Transient
+  public final static String CREATED_ON = "createdOn";
+
+  @Transient
+  public final static String UPDATED_ON = "updatedOn";
+
   @Id
   @Column(name = "GUID")
   private String guid;
@@ -63,9 +75,15 @@ public class Model implements Serializable {
 
   @PrePersist
   public void prePersist() {
-    guid = UUID.randomUUID().toString();
-    createdOn = new Date();
-    updatedOn = new Date();
+    if (guid == null) {
+      guid = UUID.randomUUID().toString();
+    }
+    if (createdOn == null) {
+      createdOn = new Date();
+    }
+    if (updatedOn == null) {
+      updatedOn = createdOn;
+    }
   }
 
   @PreUpdate
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.aggregation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import ro.brage.dodo.jpa.annotations.AggregateCache;
+
+/**
+ * Keeps the results of the aggregations for a short time, see {@link AggregateCache}. There is
+ * one cache per entity, the least recently used result is evicted when it's full.
+ * 
+ * @author Dorin Brage
+ */
+public class AggregateResultCache {
+
+  private final static Map<Class<?>, AggregateResultCache> CACHES = new ConcurrentHashMap<>();
+
+  private final long ttl;
+  private final int maxEntries;
+
+  private final LinkedHashMap<String, Entry> results = new LinkedHashMap<>(64, 0.75f, true);
+
+  /**
+   * Returns the cache of the entity, creating it on the first call
+   */
+  public static AggregateResultCache forEntity(Class<?> entityClass, AggregateCache config) {
+    return CACHES.computeIfAbsent(entityClass,
+        key -> new AggregateResultCache(config.ttl(), config.maxEntries()));
+  }
+
+  AggregateResultCache(long ttl, int maxEntries) {
+    this.ttl = ttl;
+    this.maxEntries = Math.max(1, maxEntries);
+  }
+
+  /**
+   * Returns the cached result or runs the aggregation
+   *
+   * @param key the key of the result
+   * @param aggregation the aggregation
+   * @return the rows
+   */
+  public List<AggregateRow> get(String key, Supplier<List<AggregateRow>> aggregation) {
+    synchronized (results) {
+      Entry entry = results.get(key);
+      if (entry != null && entry.expiresAt - System.nanoTime() > 0) {
+        return entry.rows;
+      }
+    }
+
+    List<AggregateRow> rows = aggregation.get();
+    long now = System.nanoTime();
+    synchronized (results) {
+      results.put(key, new Entry(rows, now + ttl * 1_000_000L));
+      if (results.size() > maxEntries) {
+        results.values().removeIf(cached -> cached.expiresAt - now <= 0);
+      }
+      Iterator<Entry> eldest = results.values().iterator();
+      while (results.size() > maxEntries && eldest.hasNext()) {
+        eldest.next();
+        eldest.remove();
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * @return the number of cached results
+   */
+  public int size() {
+    synchronized (results) {
+      return results.size();
+    }
+  }
+
+  private static class Entry {
+
+    private final List<AggregateRow> rows;
+    private final long expiresAt;
+
+    private Entry(List<AggregateRow> rows, long expiresAt) {
+      this.rows = rows;
+      this.expiresAt = expiresAt;
+    }
+
+  }
+
+}
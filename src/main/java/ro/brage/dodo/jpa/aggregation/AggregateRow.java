@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.aggregation;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A row of an aggregation: the values of the grouped attributes, followed by the time bucket if
+ * any, and the aggregated value
+ * 
+ * @author Dorin Brage
+ */
+public class AggregateRow implements Serializable {
+
+  private static final long serialVersionUID = 3015538283411924870L;
+
+  private final List<Object> keys;
+  private final Number value;
+
+  public AggregateRow(List<Object> keys, Number value) {
+    this.keys = keys;
+    this.value = value;
+  }
+
+  public List<Object> getKeys() {
+    return keys;
+  }
+
+  public Number getValue() {
+    return value;
+  }
+
+}
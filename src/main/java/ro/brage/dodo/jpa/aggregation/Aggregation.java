@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.aggregation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import javax.persistence.metamodel.SingularAttribute;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.enums.AggregateFunction;
+import ro.brage.dodo.jpa.enums.TimeBucket;
+
+/**
+ * Describes an aggregation run in the database by <code>EntityService.aggregate(...)</code>
+ * 
+ * <pre>
+ * List&lt;AggregateRow&gt; perStatusAndDay = getService().aggregate(
+ *     new Aggregation(AggregateFunction.COUNT)
+ *         .groupBy(Car_.status)
+ *         .bucket(TimeBucket.DAY, Model.CREATED_ON)
+ *         .between(from, to));
+ * </pre>
+ * 
+ * The time buckets rely on the <code>year()</code>, <code>month()</code>, <code>day()</code> and
+ * <code>hour()</code> functions of the persistence provider.
+ * 
+ * @author Dorin Brage
+ */
+public class Aggregation {
+
+  private final AggregateFunction function;
+  private String attribute;
+  private final List<String> groupBy = new ArrayList<>();
+  private TimeBucket bucket;
+  private String bucketAttribute = Model.CREATED_ON;
+  private Date from;
+  private Date to;
+
+  public Aggregation(AggregateFunction function) {
+    this.function = Objects.requireNonNull(function);
+  }
+
+  /**
+   * The attribute of SUM, MIN and MAX
+   */
+  public Aggregation of(SingularAttribute<?, ?> attribute) {
+    return of(attribute.getName());
+  }
+
+  public Aggregation of(String attribute) {
+    this.attribute = attribute;
+    return this;
+  }
+
+  public Aggregation groupBy(SingularAttribute<?, ?>... attributes) {
+    for (SingularAttribute<?, ?> attribute : attributes) {
+      groupBy.add(attribute.getName());
+    }
+    return this;
+  }
+
+  public Aggregation groupBy(String... attributes) {
+    groupBy.addAll(Arrays.asList(attributes));
+    return this;
+  }
+
+  /**
+   * Group by a time bucket of <code>createdOn</code> or <code>updatedOn</code>, the attribute is
+   * also the one filtered by {@link #between(Date, Date)}
+   *
+   * @param bucket the bucket or null for no grouping by time
+   * @param attribute the date attribute
+   */
+  public Aggregation bucket(TimeBucket bucket, String attribute) {
+    this.bucket = bucket;
+    this.bucketAttribute = attribute;
+    return this;
+  }
+
+  /**
+   * Aggregate only the entities whose bucket attribute is within [from, to)
+   */
+  public Aggregation between(Date from, Date to) {
+    this.from = from;
+    this.to = to;
+    return this;
+  }
+
+  public AggregateFunction getFunction() {
+    return function;
+  }
+
+  public String getAttribute() {
+    return attribute;
+  }
+
+  public List<String> getGroupBy() {
+    return groupBy;
+  }
+
+  public TimeBucket getBucket() {
+    return bucket;
+  }
+
+  public String getBucketAttribute() {
+    return bucketAttribute;
+  }
+
+  public Date getFrom() {
+    return from;
+  }
+
+  public Date getTo() {
+    return to;
+  }
+
+  /**
+   * The shape of the aggregation, i.e. everything used by its query but the parameter values.
+   * Aggregations with the same shape share the same query.
+   */
+  public String getShape() {
+    boolean dated = bucket != null || from != null || to != null;
+    return function + "(" + (function == AggregateFunction.COUNT ? "" : attribute) + ")" + groupBy
+        + ":" + (bucket == null ? "" : bucket) + "(" + (dated ? bucketAttribute : "") + "):"
+        + (from != null) + (to != null);
+  }
+
+  /**
+   * @return the key of the aggregation's result, including the parameter values
+   */
+  public String getKey() {
+    return getShape() + ":" + (from == null ? "" : from.getTime()) + ":"
+        + (to == null ? "" : to.getTime());
+  }
+
+  /**
+   * Build the JPQL query of the aggregation
+   *
+   * @param entityName the name of the entity
+   * @return the query
+   */
+  public String toJpql(String entityName) {
+    List<String> keys = new ArrayList<>();
+    groupBy.forEach(name -> keys.add("e." + name));
+    if (bucket != null) {
+      String date = "e." + bucketAttribute;
+      keys.add("year(" + date + ")");
+      keys.add("month(" + date + ")");
+      if (bucket != TimeBucket.MONTH) {
+        keys.add("day(" + date + ")");
+      }
+      if (bucket == TimeBucket.HOUR) {
+        keys.add("hour(" + date + ")");
+      }
+    }
+    String value = function == AggregateFunction.COUNT ? "COUNT(e)"
+        : function + "(e." + attribute + ")";
+
+    StringBuilder jpql = new StringBuilder("SELECT ");
+    keys.forEach(key -> jpql.append(key).append(", "));
+    jpql.append(value).append(" FROM ").append(entityName).append(" e");
+    if (from != null || to != null) {
+      jpql.append(" WHERE ");
+      if (from != null) {
+        jpql.append("e.").append(bucketAttribute).append(" >= :from");
+      }
+      if (to != null) {
+        jpql.append(from != null ? " AND " : "").append("e.").append(bucketAttribute)
+            .append(" < :to");
+      }
+    }
+    if (!keys.isEmpty()) {
+      String keyList = String.join(", ", keys);
+      jpql.append(" GROUP BY ").append(keyList).append(" ORDER BY ").append(keyList);
+    }
+    return jpql.toString();
+  }
+
+  /**
+   * Map the result of the query to immutable rows
+   *
+   * @param results the result list of the query
+   * @return the rows
+   */
+  public List<AggregateRow> toRows(List<?> results) {
+    List<AggregateRow> rows = new ArrayList<>(results.size());
+    for (Object result : results) {
+      Object[] columns = result instanceof Object[] ? (Object[]) result : new Object[] {result};
+      List<Object> keys = new ArrayList<>(groupBy.size() + 1);
+      for (int i = 0; i < groupBy.size(); i++) {
+        keys.add(columns[i]);
+      }
+      if (bucket != null) {
+        keys.add(toDate(columns, groupBy.size()));
+      }
+      rows.add(new AggregateRow(Collections.unmodifiableList(keys),
+          (Number) columns[columns.length - 1]));
+    }
+    return Collections.unmodifiableList(rows);
+  }
+
+  private Date toDate(Object[] columns, int offset) {
+    if (columns[offset] == null) {
+      return null;
+    }
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(Calendar.YEAR, ((Number) columns[offset]).intValue());
+    calendar.set(Calendar.MONTH, ((Number) columns[offset + 1]).intValue() - 1);
+    if (bucket != TimeBucket.MONTH) {
+      calendar.set(Calendar.DAY_OF_MONTH, ((Number) columns[offset + 2]).intValue());
+    }
+    if (bucket == TimeBucket.HOUR) {
+      calendar.set(Calendar.HOUR_OF_DAY, ((Number) columns[offset + 3]).intValue());
+    }
+    return calendar.getTime();
+  }
+
+}
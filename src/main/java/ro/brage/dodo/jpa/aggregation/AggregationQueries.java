@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.aggregation;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.annotations.Aggregatable;
+import ro.brage.dodo.jpa.enums.AggregateFunction;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.exceptions.EntityServiceException;
+import ro.brage.dodo.jpa.metadata.ReflectiveMetadata;
+
+/**
+ * Validates the aggregations against the {@link Aggregatable} attributes and compiles every
+ * aggregation shape once, as a named query of the persistence unit. At most
+ * {@link #MAX_QUERIES} shapes are registered per persistence unit, the others run as ad hoc
+ * queries.
+ * 
+ * @author Dorin Brage
+ */
+public class AggregationQueries {
+
+  protected final static int MAX_QUERIES = 1000;
+
+  private final static Map<Class<?>, Set<String>> AGGREGATABLE = new ConcurrentHashMap<>();
+
+  private final static Map<EntityManagerFactory, Set<String>> REGISTERED =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  private AggregationQueries() {}
+
+  /**
+   * @throws EntityServiceException with {@link JpaErrorKeys#INVALID_AGGREGATION} if the
+   *         aggregation uses attributes not whitelisted
+   */
+  public static void validate(Class<?> entityClass, Aggregation aggregation) {
+    Set<String> allowed = AGGREGATABLE.computeIfAbsent(entityClass, AggregationQueries::find);
+    Set<String> grouped = new HashSet<>();
+    for (String attribute : aggregation.getGroupBy()) {
+      if (!allowed.contains(attribute)) {
+        throw invalid(attribute + " isn't @Aggregatable");
+      }
+      if (!grouped.add(attribute)) {
+        throw invalid(attribute + " is grouped by twice");
+      }
+    }
+    if (aggregation.getFunction() != AggregateFunction.COUNT
+        && !allowed.contains(aggregation.getAttribute())) {
+      throw invalid(aggregation.getFunction() + " requires an @Aggregatable attribute");
+    }
+    if (aggregation.getAttribute() != null && !allowed.contains(aggregation.getAttribute())) {
+      throw invalid(aggregation.getAttribute() + " isn't @Aggregatable");
+    }
+    String bucketAttribute = aggregation.getBucketAttribute();
+    if (!Model.CREATED_ON.equals(bucketAttribute) && !Model.UPDATED_ON.equals(bucketAttribute)) {
+      throw invalid("The time bucket must be " + Model.CREATED_ON + " or " + Model.UPDATED_ON);
+    }
+  }
+
+  /**
+   * Register the {@link Aggregatable} attributes of an entity, the ones of an entity not
+   * registered are read through reflection
+   *
+   * @param entityClass the entity class
+   * @param attributes the attributes, see
+   *        {@link ro.brage.dodo.jpa.metadata.EntityMetadata#getAggregatableAttributes()}
+   */
+  public static void register(Class<?> entityClass, Collection<String> attributes) {
+    AGGREGATABLE.put(entityClass, new HashSet<>(attributes));
+  }
+
+  /**
+   * Create the query of the aggregation's shape, registered as a named query once per persistence
+   * unit while there are less than {@link #MAX_QUERIES}
+   *
+   * @param entityManager the EntityManager running the query
+   * @param queryName the name of the query
+   * @param jpql the query
+   * @return the query
+   */
+  public static Query createQuery(EntityManager entityManager, String queryName, String jpql) {
+    EntityManagerFactory factory = entityManager.getEntityManagerFactory();
+    Set<String> registered;
+    synchronized (REGISTERED) {
+      registered = REGISTERED.computeIfAbsent(factory, key -> ConcurrentHashMap.newKeySet());
+    }
+    if (!registered.contains(queryName)) {
+      synchronized (registered) {
+        if (!registered.contains(queryName)) {
+          if (registered.size() >= MAX_QUERIES) {
+            return entityManager.createQuery(jpql);
+          }
+          factory.addNamedQuery(queryName, entityManager.createQuery(jpql));
+          registered.add(queryName);
+        }
+      }
+    }
+    return entityManager.createNamedQuery(queryName);
+  }
+
+  private static Set<String> find(Class<?> entityClass) {
+    return new HashSet<>(ReflectiveMetadata.findAggregatableAttributes(entityClass));
+  }
+
+  private static EntityServiceException invalid(String message) {
+    return new EntityServiceException(JpaErrorKeys.INVALID_AGGREGATION, message);
+  }
+
+}
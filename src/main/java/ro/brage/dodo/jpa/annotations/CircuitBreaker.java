@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import javax.enterprise.util.Nonbinding;
+import javax.interceptor.InterceptorBinding;
+
+/**
+ * Guards the operations of an {@link ro.brage.dodo.jpa.EntityService} with a circuit breaker.
+ * When too many of the last calls failed or were slow the circuit opens and the calls fail fast
+ * with {@link ro.brage.dodo.jpa.enums.JpaErrorKeys#CIRCUIT_OPEN}, after a while a few calls are
+ * let through for probing the database.
+ * 
+ * <pre>
+ * &#64;Stateless
+ * &#64;CircuitBreaker(name = "main", failureRate = 50, slowCall = 2000)
+ * public class CarService extends EntityService&lt;Car&gt; {
+ * }
+ * </pre>
+ * 
+ * @author Dorin Brage
+ */
+@Inherited
+@InterceptorBinding
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CircuitBreaker {
+
+  /**
+   * The name of the circuit, the services of the same database can share it. By default every
+   * entity has its own circuit.
+   */
+  @Nonbinding
+  String name() default "";
+
+  /**
+   * The percentage of failed calls opening the circuit
+   */
+  @Nonbinding
+  int failureRate() default 50;
+
+  /**
+   * The duration in milliseconds of a slow call
+   */
+  @Nonbinding
+  long slowCall() default 5000;
+
+  /**
+   * The percentage of slow calls opening the circuit
+   */
+  @Nonbinding
+  int slowCallRate() default 100;
+
+  /**
+   * The number of the last calls the rates are computed on
+   */
+  @Nonbinding
+  int window() default 20;
+
+  /**
+   * The time in milliseconds the circuit stays open
+   */
+  @Nonbinding
+  long openFor() default 30000;
+
+  /**
+   * The number of the probing calls closing the circuit if they succeed
+   */
+  @Nonbinding
+  int halfOpenCalls() default 3;
+
+}
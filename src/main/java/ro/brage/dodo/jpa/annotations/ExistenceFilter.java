@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Keeps a Bloom filter of the GUIDs of the entities of an {@link ro.brage.dodo.jpa.EntityService}.
+ * The lookups of a GUID the filter has never seen are answered as not found without querying the
+ * database.
+ * 
+ * <pre>
+ * &#64;Stateless
+ * &#64;ExistenceFilter(expectedGuids = 5000000, falsePositiveRate = 0.001)
+ * public class CarService extends EntityService&lt;Car&gt; {
+ * }
+ * </pre>
+ * 
+ * @author Dorin Brage
+ */
+@Inherited
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ExistenceFilter {
+
+  /**
+   * The expected number of GUIDs, the filter grows to twice the GUIDs found by the last rebuild
+   */
+  long expectedGuids() default 1000000;
+
+  /**
+   * The probability of a lookup of an unknown GUID reaching the database
+   */
+  double falsePositiveRate() default 0.01;
+
+  /**
+   * The maximum size of the filter in bytes, 0 for none. A smaller budget raises the false
+   * positive rate.
+   */
+  long maxBytes() default 0;
+
+  /**
+   * The time in milliseconds between two rebuilds, they forget the deleted GUIDs
+   */
+  long rebuildInterval() default 3600000;
+
+  /**
+   * The time in milliseconds the GUIDs added before a rebuild are carried over to the rebuilt
+   * filter, as they may not be committed yet. It should exceed the transaction timeout.
+   */
+  long carryOver() default 600000;
+
+  /**
+   * TRUE if the entities are written by this node only. Otherwise the filter answers negatively
+   * only while a {@link ro.brage.dodo.jpa.events.ChangeTransport} is connected and no event was
+   * dropped since the last rebuild, as it could miss the GUIDs created by the other nodes.
+   */
+  boolean standalone() default false;
+
+}
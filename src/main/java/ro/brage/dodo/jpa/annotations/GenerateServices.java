@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates, at compile time, the services of a {@link ro.brage.dodo.jpa.Model} subclass
+ * <ul>
+ * <li><code>&lt;Entity&gt;Metadata</code>, the entity's
+ * {@link ro.brage.dodo.jpa.metadata.EntityMetadata} with the names of its queries, graphs and
+ * attributes as constants</li>
+ * <li><code>&lt;Entity&gt;EntityService</code>, a stateless {@link ro.brage.dodo.jpa.EntityService}
+ * backed by the metadata</li>
+ * <li><code>&lt;Entity&gt;RestApiService</code>, a stateless
+ * {@link ro.brage.dodo.rs.RestApiService}, only if the DTO and the mapper are given</li>
+ * </ul>
+ * A misconfigured entity, e.g. one without the <code>&lt;Entity&gt;.findAll</code> named query, fails
+ * the compilation.
+ * 
+ * @author Dorin Brage
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.SOURCE)
+public @interface GenerateServices {
+
+  /**
+   * The DTO of the rest service
+   */
+  Class<?> dto() default void.class;
+
+  /**
+   * The {@link ro.brage.dodo.rs.mappers.AdvancedMapper} of the rest service
+   */
+  Class<?> mapper() default void.class;
+
+  /**
+   * The path of the rest service, by default the lower-cased entity name
+   */
+  String path() default "";
+
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the queries of an {@link ro.brage.dodo.jpa.EntityService} run through
+ * <code>getAll</code>, <code>getResults</code> and <code>getSingleResult</code>. A single call can
+ * override them with {@link ro.brage.dodo.jpa.limits.Limits}.
+ * 
+ * <pre>
+ * &#64;Stateless
+ * &#64;QueryLimits(timeout = 2000, maxResults = 1000)
+ * public class CarService extends EntityService&lt;Car&gt; {
+ * }
+ * </pre>
+ * 
+ * @author Dorin Brage
+ */
+@Inherited
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface QueryLimits {
+
+  /**
+   * The query timeout in milliseconds, 0 for none
+   */
+  int timeout() default 0;
+
+  /**
+   * The maximum number of results, 0 for none
+   */
+  int maxResults() default 0;
+
+  /**
+   * TRUE for truncating the results over <code>maxResults</code>, FALSE for failing
+   */
+  boolean truncate() default false;
+
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Enables the write-behind mode for an {@link ro.brage.dodo.jpa.EntityService}. The entities
+ * passed to <code>create</code> are journaled, buffered in memory and persisted later in batched
+ * transactions.
+ * 
+ * <pre>
+ * &#64;Stateless
+ * &#64;WriteBehind(capacity = 50000, batchSize = 500, flushInterval = 200)
+ * public class EventService extends EntityService&lt;Event&gt; {
+ * }
+ * </pre>
+ * 
+ * @author Dorin Brage
+ */
+@Inherited
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface WriteBehind {
+
+  /**
+   * The maximum number of entities waiting to be persisted
+   */
+  int capacity() default 10000;
+
+  /**
+   * The maximum number of entities persisted within one transaction
+   */
+  int batchSize() default 500;
+
+  /**
+   * The maximum time, in milliseconds, an entity waits in the buffer
+   */
+  long flushInterval() default 1000;
+
+  /**
+   * The time, in milliseconds, <code>create</code> waits for free space before failing
+   */
+  long offerTimeout() default 100;
+
+  /**
+   * The number of times a failing batch is persisted before its entities are persisted one by
+   * one. The ones still failing are moved to the dead-letter segment of the journal if others
+   * succeed, if none succeeds the database is considered down and the batch is kept.
+   */
+  int maxRetries() default 5;
+
+  /**
+   * The maximum time, in milliseconds, between two attempts of a failing batch, the time doubles
+   * from <code>flushInterval</code> with every failure
+   */
+  long maxBackoff() default 60000;
+
+  /**
+   * The directory of the write-ahead journal, by default the <code>dodo.journal</code> system
+   * property or <code>user.home/.dodo/journal</code>. Keep it out of <code>java.io.tmpdir</code>,
+   * which may be cleared on reboot.
+   */
+  String journal() default "";
+
+  /**
+   * Whether every journal append is forced to the storage device
+   */
+  boolean sync() default false;
+
+}
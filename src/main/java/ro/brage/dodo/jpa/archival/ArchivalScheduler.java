@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.archival;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.utils.JpaLog;
+
+/**
+ * Schedules the archival job of every entity once, whatever the number of pooled service
+ * instances. A run moves the entities chunk by chunk, every chunk is committed on its own, so an
+ * interrupted run is simply continued by the next one.
+ * 
+ * @author Dorin Brage
+ */
+public class ArchivalScheduler {
+
+  private final static Logger LOG = LoggerFactory.getLogger(ArchivalScheduler.class);
+
+  private final static Set<Class<?>> SCHEDULED = ConcurrentHashMap.newKeySet();
+
+  private ArchivalScheduler() {}
+
+  /**
+   * @param entityClass the entity class
+   * @param executor the executor running the job
+   * @param interval the time, in milliseconds, between two runs
+   * @param job the job, returning the number of archived entities
+   */
+  public static void schedule(Class<?> entityClass, ScheduledExecutorService executor,
+      long interval, ArchivalJob job) {
+    if (!SCHEDULED.add(entityClass)) {
+      return;
+    }
+    executor.scheduleWithFixedDelay(() -> {
+      try {
+        long start = System.currentTimeMillis();
+        int archived = job.run();
+        if (archived > 0) {
+          LOG.info("Archived {} {} in {} ms", archived, entityClass.getSimpleName(),
+              System.currentTimeMillis() - start);
+        }
+      } catch (Exception e) {
+        JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_ARCHIVE_ENTITIES, e, null);
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @FunctionalInterface
+  public interface ArchivalJob {
+
+    int run();
+
+  }
+
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.bloom;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter of strings. The <code>k</code> bits of a value are derived from two
+ * 64-bit hashes (double hashing).
+ * 
+ * @author Dorin Brage
+ */
+public class BloomFilter {
+
+  private final AtomicLongArray words;
+  private final long bits;
+  private final int hashes;
+
+  /**
+   * @param expected the expected number of values
+   * @param falsePositiveRate the wanted false positive rate
+   * @param maxBytes the maximum size, 0 for none
+   */
+  public BloomFilter(long expected, double falsePositiveRate, long maxBytes) {
+    long n = Math.max(1, expected);
+    long optimal = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    if (maxBytes > 0) {
+      optimal = Math.min(optimal, maxBytes * 8);
+    }
+    int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimal + 63) / 64));
+    this.words = new AtomicLongArray(wordCount);
+    this.bits = wordCount * 64L;
+    this.hashes = (int) Math.max(1, Math.min(16, Math.round((double) bits / n * Math.log(2))));
+  }
+
+  public void add(String value) {
+    long hash = hash(value);
+    long step = mix(hash) | 1;
+    for (int i = 0; i < hashes; i++) {
+      long bit = Math.floorMod(hash + i * step, bits);
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+      if ((words.get(word) & mask) == 0) {
+        words.getAndAccumulate(word, mask, (current, added) -> current | added);
+      }
+    }
+  }
+
+  /**
+   * @return FALSE if the value was definitely never added
+   */
+  public boolean mightContain(String value) {
+    long hash = hash(value);
+    long step = mix(hash) | 1;
+    for (int i = 0; i < hashes; i++) {
+      long bit = Math.floorMod(hash + i * step, bits);
+      if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public long getBits() {
+    return bits;
+  }
+
+  public int getHashes() {
+    return hashes;
+  }
+
+  /**
+   * The 64-bit FNV-1a hash
+   */
+  private static long hash(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b;
+      hash *= 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+}
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.bloom;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.annotations.ExistenceFilter;
+import ro.brage.dodo.jpa.enums.ChangeOperation;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.events.ChangeEvent;
+import ro.brage.dodo.jpa.events.ChangeEventBus;
+import ro.brage.dodo.jpa.utils.JpaLog;
+
+/**
+ * The {@link BloomFilter} of the GUIDs of an entity, see {@link ExistenceFilter}
+ * <ul>
+ * <li>it's built in the background by streaming the GUIDs, until then every GUID might exist</li>
+ * <li>the persisted entities are added by the {@link GuidFilterListener}, the ones created by the
+ * other nodes by their {@link ChangeEvent}s</li>
+ * <li>it's rebuilt periodically for forgetting the deleted GUIDs, the GUIDs added while
+ * rebuilding, and within {@link ExistenceFilter#carryOver()} before, are carried over as they may
+ * not be committed yet</li>
+ * <li>unless the entity is {@link ExistenceFilter#standalone()}, it answers negatively only while
+ * the {@link ChangeEventBus} is connected to the other nodes and dropped no event since the last
+ * rebuild</li>
+ * </ul>
+ * 
+ * @author Dorin Brage
+ */
+public class GuidFilter {
+
+  private final static Logger LOG = LoggerFactory.getLogger(GuidFilter.class);
+
+  private final static Map<Class<?>, GuidFilter> FILTERS = new ConcurrentHashMap<>();
+  private final static AtomicBoolean SUBSCRIBED = new AtomicBoolean();
+
+  protected final static int CHUNK = 10000;
+
+  private final Class<?> entityClass;
+  private final ExistenceFilter config;
+
+  private volatile BloomFilter current;
+  private volatile BloomFilter building;
+  private final Deque<Object[]> recent = new ConcurrentLinkedDeque<>();
+  private long lastCount;
+  private volatile long droppedAtBuild;
+
+  /**
+   * Returns the filter of the entity, creating and scheduling its builds on the first call
+   *
+   * @param entityClass the entity class
+   * @param config the configuration
+   * @param executor the executor running the builds
+   * @param loader reads the GUIDs in order, chunk by chunk
+   * @return the filter
+   */
+  public static GuidFilter forEntity(Class<?> entityClass, ExistenceFilter config,
+      ScheduledExecutorService executor, GuidLoader loader) {
+    if (SUBSCRIBED.compareAndSet(false, true)) {
+      ChangeEventBus.subscribe(GuidFilter::addRemote);
+    }
+    return FILTERS.computeIfAbsent(entityClass, key -> {
+      GuidFilter filter = new GuidFilter(entityClass, config);
+      executor.scheduleWithFixedDelay(() -> filter.rebuild(loader), 0, config.rebuildInterval(),
+          TimeUnit.MILLISECONDS);
+      return filter;
+    });
+  }
+
+  /**
+   * @return the filter of the entity or of its nearest superclass having one, or null if none has
+   */
+  public static GuidFilter lookup(Class<?> type) {
+    for (; type != null && type != Model.class; type = type.getSuperclass()) {
+      GuidFilter filter = FILTERS.get(type);
+      if (filter != null) {
+        return filter;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Add a persisted GUID to the filters of the entity and of its superclasses, the services of a
+   * superclass find it too
+   */
+  static void add(Class<?> type, String guid) {
+    for (; type != null && type != Model.class; type = type.getSuperclass()) {
+      GuidFilter filter = FILTERS.get(type);
+      if (filter != null) {
+        filter.add(guid);
+      }
+    }
+  }
+
+  /**
+   * Add the GUIDs of the entities created by the other nodes
+   */
+  private static void addRemote(List<ChangeEvent> events) {
+    for (ChangeEvent event : events) {
+      if (event.isRemote() && event.getOperation() == ChangeOperation.CREATE) {
+        FILTERS.forEach((entityClass, filter) -> {
+          if (event.is(entityClass)) {
+            filter.add(event.getGuid());
+          }
+        });
+      }
+    }
+  }
+
+  GuidFilter(Class<?> entityClass, ExistenceFilter config) {
+    this.entityClass = entityClass;
+    this.config = config;
+  }
+
+  /**
+   * @param guid the GUID
+   * @return FALSE if no entity has the GUID, TRUE if it might exist, the filter isn't built yet or
+   *         it may have missed the GUIDs created by the other nodes
+   */
+  public boolean mightContain(String guid) {
+    BloomFilter filter = current;
+    return filter == null || guid == null || !isComplete() || filter.mightContain(guid);
+  }
+
+  /**
+   * @return TRUE if the filter has seen every GUID created since its last rebuild
+   */
+  private boolean isComplete() {
+    return config.standalone()
+        || ChangeEventBus.isConnected() && ChangeEventBus.getDropped() == droppedAtBuild;
+  }
+
+  public void add(String guid) {
+    long now = System.currentTimeMillis();
+    recent.addLast(new Object[] {now, guid});
+    for (Object[] oldest; (oldest = recent.peekFirst()) != null
+        && now - (long) oldest[0] > config.carryOver();) {
+      recent.pollFirst();
+    }
+    BloomFilter filter = current;
+    if (filter != null) {
+      filter.add(guid);
+    }
+    filter = building;
+    if (filter != null) {
+      filter.add(guid);
+    }
+  }
+
+  void rebuild(GuidLoader loader) {
+    try {
+      long start = System.currentTimeMillis();
+      long dropped = ChangeEventBus.getDropped();
+      BloomFilter next = new BloomFilter(Math.max(config.expectedGuids(), 2 * lastCount),
+          config.falsePositiveRate(), config.maxBytes());
+      building = next;
+
+      long count = 0;
+      String after = null;
+      List<String> chunk;
+      do {
+        chunk = loader.load(after, CHUNK);
+        chunk.forEach(next::add);
+        count += chunk.size();
+        after = chunk.isEmpty() ? after : chunk.get(chunk.size() - 1);
+      } while (chunk.size() == CHUNK);
+
+      long since = start - config.carryOver();
+      recent.forEach(added -> {
+        if ((long) added[0] >= since) {
+          next.add((String) added[1]);
+        }
+      });
+      current = next;
+      droppedAtBuild = dropped;
+      lastCount = count;
+      LOG.info("Built the GUID filter of {}: {} GUIDs, {} bits, {} hashes in {} ms",
+          entityClass.getSimpleName(), count, next.getBits(), next.getHashes(),
+          System.currentTimeMillis() - start);
+    } catch (Exception e) {
+      JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_BUILD_GUID_FILTER, e, null);
+    } finally {
+      building = null;
+    }
+  }
+
+  @FunctionalInterface
+  public interface GuidLoader {
+
+    List<String> load(String after, int max);
+
+  }
+
+}
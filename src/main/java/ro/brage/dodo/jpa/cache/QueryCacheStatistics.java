@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.cache;
+
+import java.io.Serializable;
+
+/**
+ * The hits and misses of a cached named query
+ * 
+ * @author Dorin Brage
+ */
+public class QueryCacheStatistics implements Serializable {
+
+  private static final long serialVersionUID = -6306771419606322914L;
+
+  private final String query;
+  private final long hits;
+  private final long misses;
+
+  public QueryCacheStatistics(String query, long hits, long misses) {
+    this.query = query;
+    this.hits = hits;
+    this.misses = misses;
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public double getHitRatio() {
+    long total = hits + misses;
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %d hits, %d misses, %.2f", query, hits, misses, getHitRatio());
+  }
+
+}
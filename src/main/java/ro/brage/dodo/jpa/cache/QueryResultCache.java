@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import ro.brage.dodo.jpa.annotations.QueryCache;
+import ro.brage.dodo.jpa.events.ChangeEvent;
+import ro.brage.dodo.jpa.events.ChangeEventBus;
+import ro.brage.dodo.jpa.utils.QueryParams;
+
+/**
+ * The result cache of the named queries of an entity, see {@link QueryCache}
+ * <ul>
+ * <li>the results are keyed by the named query and its non-null parameters</li>
+ * <li>the cache is bounded by the total number of cached rows, the least recently used results
+ * are evicted first</li>
+ * <li>every write bumps the version of the entity, the results read with an older version are
+ * misses. A write bumps the version when it runs and once more when it's committed, so a result
+ * read meanwhile isn't kept.</li>
+ * </ul>
+ * 
+ * @author Dorin Brage
+ */
+public class QueryResultCache {
+
+  private final static Map<Class<?>, QueryResultCache> CACHES = new ConcurrentHashMap<>();
+
+  private final static AtomicBoolean SUBSCRIBED = new AtomicBoolean();
+
+  private final Set<String> queries;
+  private final int maxRows;
+
+  private final AtomicLong version = new AtomicLong();
+  private final LinkedHashMap<Object, Entry> results = new LinkedHashMap<>(64, 0.75f, true);
+  private int rows;
+
+  private final Map<String, LongAdder[]> statistics = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the cache of the entity, creating it on the first call
+   */
+  public static QueryResultCache forEntity(Class<?> entityClass, QueryCache config) {
+    if (SUBSCRIBED.compareAndSet(false, true)) {
+      ChangeEventBus.subscribe(QueryResultCache::invalidateRemote);
+    }
+    return CACHES.computeIfAbsent(entityClass, key -> new QueryResultCache(config));
+  }
+
+  /**
+   * Invalidate the caches of the entities changed by the other nodes
+   */
+  private static void invalidateRemote(List<ChangeEvent> events) {
+    for (ChangeEvent event : events) {
+      if (event.isRemote()) {
+        CACHES.forEach((entityClass, cache) -> {
+          if (event.is(entityClass)) {
+            cache.version.incrementAndGet();
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Invalidate all the cached results of the entity, if any
+   *
+   * @return TRUE if the entity has a cache
+   */
+  public static boolean invalidate(Class<?> entityClass) {
+    QueryResultCache cache = CACHES.get(entityClass);
+    if (cache != null) {
+      cache.version.incrementAndGet();
+    }
+    return cache != null;
+  }
+
+  private QueryResultCache(QueryCache config) {
+    this.queries = new HashSet<>(Arrays.asList(config.queries()));
+    this.maxRows = config.maxRows();
+    for (String query : queries) {
+      statistics.put(query, new LongAdder[] {new LongAdder(), new LongAdder()});
+    }
+  }
+
+  /**
+   * @param namedQuery the short name of the query
+   * @return TRUE if the query's results are cached
+   */
+  public boolean isCached(String namedQuery) {
+    return queries.contains(namedQuery);
+  }
+
+  /**
+   * @return the current version, to be passed to {@link #put} with the result read afterwards
+   */
+  public long getVersion() {
+    return version.get();
+  }
+
+  /**
+   * Get a cached result and count the hit or the miss
+   *
+   * @param namedQuery the short name of the query
+   * @param parameters the parameters
+   * @return the cached value or null
+   */
+  public Object get(String namedQuery, QueryParams parameters) {
+    Object key = key(namedQuery, parameters);
+    Entry entry;
+    synchronized (results) {
+      entry = results.get(key);
+      if (entry != null && entry.version != version.get()) {
+        remove(key);
+        entry = null;
+      }
+    }
+    statistics.get(namedQuery)[entry == null ? 1 : 0].increment();
+    return entry == null ? null : entry.value;
+  }
+
+  /**
+   * Cache a result
+   *
+   * @param namedQuery the short name of the query
+   * @param parameters the parameters
+   * @param readVersion the version read before running the query
+   * @param value the GUIDs or the snapshot of the result
+   * @param size the number of rows of the result
+   */
+  public void put(String namedQuery, QueryParams parameters, long readVersion, Object value,
+      int size) {
+    int weight = Math.max(1, size);
+    if (weight > maxRows || readVersion != version.get()) {
+      return;
+    }
+    Object key = key(namedQuery, parameters);
+    synchronized (results) {
+      remove(key);
+      results.put(key, new Entry(value, readVersion, weight));
+      rows += weight;
+      Iterator<Entry> eldest = results.values().iterator();
+      while (rows > maxRows && eldest.hasNext()) {
+        rows -= eldest.next().weight;
+        eldest.remove();
+      }
+    }
+  }
+
+  /**
+   * @return the hits and misses of every cached query
+   */
+  public List<QueryCacheStatistics> getStatistics() {
+    List<QueryCacheStatistics> all = new ArrayList<>();
+    statistics.forEach((query, counters) -> all
+        .add(new QueryCacheStatistics(query, counters[0].sum(), counters[1].sum())));
+    return all;
+  }
+
+  private void remove(Object key) {
+    Entry removed = results.remove(key);
+    if (removed != null) {
+      rows -= removed.weight;
+    }
+  }
+
+  /**
+   * The parameters with a null value aren't bound, so they're left out of the key
+   */
+  private static Object key(String namedQuery, QueryParams parameters) {
+    Map<String, Object> normalized = new TreeMap<>();
+    if (parameters != null) {
+      parameters.getParams().forEach((name, value) -> {
+        if (value != null) {
+          normalized.put(name, value);
+        }
+      });
+    }
+    return Arrays.asList(namedQuery, normalized);
+  }
+
+  private static class Entry {
+
+    private final Object value;
+    private final long version;
+    private final int weight;
+
+    private Entry(Object value, long version, int weight) {
+      this.value = value;
+      this.version = version;
+      this.weight = weight;
+    }
+
+  }
+
+}
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.circuit;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityExistsException;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.brage.dodo.jpa.annotations.CircuitBreaker;
+import ro.brage.dodo.jpa.enums.CircuitState;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.exceptions.EntityServiceException;
+import ro.brage.dodo.jpa.utils.JpaLog;
+
+/**
+ * A circuit breaker, see {@link CircuitBreaker}
+ * <ul>
+ * <li>CLOSED: the calls run, the outcome of the last <code>window</code> calls is recorded</li>
+ * <li>OPEN: the calls fail fast until <code>openFor</code> elapsed</li>
+ * <li>HALF_OPEN: <code>halfOpenCalls</code> calls run, the circuit closes if all succeed and
+ * opens again at the first failure</li>
+ * </ul>
+ * Only the database failures count, e.g. a {@link NoResultException} doesn't. The failures
+ * handled by the service itself are reported through {@link #failed(Throwable)}.
+ * 
+ * @author Dorin Brage
+ */
+public class Circuit {
+
+  private final static Logger LOG = LoggerFactory.getLogger(Circuit.class);
+
+  private final static Map<String, Circuit> CIRCUITS = new ConcurrentHashMap<>();
+
+  private final static ThreadLocal<boolean[]> CURRENT = new ThreadLocal<>();
+
+  private final static int FAILED = 1;
+  private final static int SLOW = 2;
+
+  private final String name;
+  private final CircuitBreaker config;
+
+  private CircuitState state = CircuitState.CLOSED;
+  private final int[] outcomes;
+  private int next;
+  private int recorded;
+  private int failures;
+  private int slowCalls;
+  private long openedAt;
+  private int probes;
+  private int probed;
+
+  /**
+   * Returns the circuit with the given name, creating it on the first call
+   */
+  public static Circuit forName(String name, CircuitBreaker config) {
+    return CIRCUITS.computeIfAbsent(name, key -> new Circuit(name, config));
+  }
+
+  /**
+   * Report a failure handled by the running call, e.g. logged and turned into an empty result
+   *
+   * @param e the failure, ignored if it isn't a database failure
+   */
+  public static void failed(Throwable e) {
+    boolean[] current = CURRENT.get();
+    if (current != null && isFailure(e)) {
+      current[0] = true;
+    }
+  }
+
+  /**
+   * @param e an exception thrown by a call
+   * @return TRUE if the exception is a failure of the database
+   */
+  public static boolean isFailure(Throwable e) {
+    if (e instanceof EntityServiceException) {
+      JpaErrorKeys key = ((EntityServiceException) e).getKey();
+      if (key == JpaErrorKeys.QUERY_TIMEOUT || key == JpaErrorKeys.OPERATION_TIMEOUT) {
+        return true;
+      }
+      e = e.getCause();
+    }
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof NoResultException || cause instanceof NonUniqueResultException
+          || cause instanceof EntityNotFoundException || cause instanceof EntityExistsException
+          || cause instanceof OptimisticLockException) {
+        return false;
+      }
+      if (cause instanceof PersistenceException || cause instanceof SQLException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Circuit(String name, CircuitBreaker config) {
+    this.name = name;
+    this.config = config;
+    this.outcomes = new int[Math.max(1, config.window())];
+  }
+
+  /**
+   * Run a call through the circuit
+   *
+   * @param call the call
+   * @return the result of the call
+   * @throws EntityServiceException with {@link JpaErrorKeys#CIRCUIT_OPEN} if the circuit is open
+   */
+  public <T> T execute(Callable<T> call) throws Exception {
+    acquire();
+    boolean[] failed = {false};
+    boolean[] outer = CURRENT.get();
+    CURRENT.set(failed);
+    long start = System.nanoTime();
+    try {
+      return call.call();
+    } catch (Exception e) {
+      failed[0] |= isFailure(e);
+      throw e;
+    } finally {
+      if (outer == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(outer);
+      }
+      if (record(failed[0], TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))) {
+        JpaLog.flush();
+      }
+    }
+  }
+
+  public synchronized CircuitState getState() {
+    return state;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  private synchronized void acquire() {
+    if (state == CircuitState.OPEN) {
+      if (System.currentTimeMillis() - openedAt < config.openFor()) {
+        throw new EntityServiceException(JpaErrorKeys.CIRCUIT_OPEN, name + " is open");
+      }
+      transition(CircuitState.HALF_OPEN);
+      probes = config.halfOpenCalls();
+      probed = 0;
+    }
+    if (state == CircuitState.HALF_OPEN) {
+      if (probes == 0) {
+        throw new EntityServiceException(JpaErrorKeys.CIRCUIT_OPEN, name + " is half-open");
+      }
+      probes--;
+    }
+  }
+
+  /**
+   * @return TRUE if the circuit closed
+   */
+  private synchronized boolean record(boolean failed, long duration) {
+    boolean slow = duration >= config.slowCall();
+    switch (state) {
+      case CLOSED:
+        int outcome = (failed ? FAILED : 0) | (slow ? SLOW : 0);
+        if (recorded == outcomes.length) {
+          failures -= outcomes[next] & FAILED;
+          slowCalls -= (outcomes[next] & SLOW) / SLOW;
+        } else {
+          recorded++;
+        }
+        outcomes[next] = outcome;
+        next = (next + 1) % outcomes.length;
+        failures += outcome & FAILED;
+        slowCalls += (outcome & SLOW) / SLOW;
+
+        if (recorded == outcomes.length
+            && (failures * 100 >= config.failureRate() * recorded
+                || slowCalls * 100 >= config.slowCallRate() * recorded)) {
+          open();
+        }
+        break;
+      case HALF_OPEN:
+        if (failed || slow) {
+          open();
+        } else if (++probed >= config.halfOpenCalls()) {
+          transition(CircuitState.CLOSED);
+          recorded = next = failures = slowCalls = 0;
+          return true;
+        }
+        break;
+      default:
+        // a call started before the circuit opened
+    }
+    return false;
+  }
+
+  private void open() {
+    transition(CircuitState.OPEN);
+    openedAt = System.currentTimeMillis();
+  }
+
+  private void transition(CircuitState to) {
+    LOG.warn("Circuit {} is {}, it was {}", name, to, state);
+    state = to;
+  }
+
+}
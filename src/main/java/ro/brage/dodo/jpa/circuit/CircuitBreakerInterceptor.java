@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.circuit;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Priority;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+import ro.brage.dodo.jpa.EntityService;
+import ro.brage.dodo.jpa.annotations.CircuitBreaker;
+import ro.brage.dodo.jpa.annotations.Unguarded;
+
+/**
+ * Runs the methods of the services annotated with {@link CircuitBreaker} through their
+ * {@link Circuit}
+ * 
+ * @author Dorin Brage
+ */
+@CircuitBreaker
+@Interceptor
+@Priority(Interceptor.Priority.LIBRARY_BEFORE)
+public class CircuitBreakerInterceptor implements Serializable {
+
+  private static final long serialVersionUID = 5533040213542946158L;
+
+  private final static Map<Class<?>, Circuit> CIRCUITS = new ConcurrentHashMap<>();
+
+  private final static Map<Method, Boolean> UNGUARDED = new ConcurrentHashMap<>();
+
+  @AroundInvoke
+  public Object guard(InvocationContext context) throws Exception {
+    Method method = context.getMethod();
+    if (method != null
+        && UNGUARDED.computeIfAbsent(method, key -> key.isAnnotationPresent(Unguarded.class))) {
+      return context.proceed();
+    }
+    Object target = context.getTarget();
+    Circuit circuit = CIRCUITS.computeIfAbsent(target.getClass(), type -> circuit(target));
+    if (circuit == null) {
+      return context.proceed();
+    }
+    return circuit.execute(context::proceed);
+  }
+
+  private static Circuit circuit(Object target) {
+    CircuitBreaker config = target.getClass().getAnnotation(CircuitBreaker.class);
+    if (config == null) {
+      return null;
+    }
+    String name = config.name();
+    if (name.isEmpty()) {
+      name = target instanceof EntityService
+          ? ((EntityService<?>) target).getEntityClass().getName()
+          : target.getClass().getName();
+    }
+    return Circuit.forName(name, config);
+  }
+
+}
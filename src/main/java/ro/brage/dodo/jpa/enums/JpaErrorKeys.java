@@ -29,4 +29,37 @@ public enum JpaErrorKeys {
 
   // LOAD
   FAILED_TO_LOAD_ENTITY, FAILED_TO_LOAD_ENTITIES,
+
+  // DELETE
+  FAILED_TO_DELETE_ENTITY,
+
+  // WRITE BEHIND
+  WRITE_BUFFER_FULL, FAILED_TO_JOURNAL_ENTITY, FAILED_TO_FLUSH_ENTITIES, DEAD_LETTERED_ENTITY,
+
+  // SEARCH
+  NOT_SEARCHABLE,
+
+  // AGGREGATE
+  INVALID_AGGREGATION,
+
+  // ARCHIVE
+  FAILED_TO_ARCHIVE_ENTITIES,
+
+  // LIMITS
+  QUERY_TIMEOUT, TOO_MANY_RESULTS, OPERATION_TIMEOUT,
+
+  // BATCH
+  INVALID_BATCH, FAILED_BATCH_OPERATION,
+
+  // CIRCUIT BREAKER
+  CIRCUIT_OPEN,
+
+  // EVENTS
+  FAILED_TO_DELIVER_EVENTS,
+
+  // SHARDING
+  NOT_SHARDABLE,
+
+  // GUID FILTER
+  FAILED_TO_BUILD_GUID_FILTER,
 }
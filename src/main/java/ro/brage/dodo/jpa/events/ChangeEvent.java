@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.events;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import ro.brage.dodo.jpa.enums.ChangeOperation;
+
+/**
+ * A committed change of an entity
+ * 
+ * @author Dorin Brage
+ */
+public class ChangeEvent implements Serializable {
+
+  private static final long serialVersionUID = -3850370935190541146L;
+
+  private final static ClassValue<Map<String, Boolean>> SUBCLASSES =
+      new ClassValue<Map<String, Boolean>>() {
+
+        @Override
+        protected Map<String, Boolean> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  private final String origin;
+  private final String entityType;
+  private final String guid;
+  private final Date updatedOn;
+  private final ChangeOperation operation;
+
+  public ChangeEvent(String origin, String entityType, String guid, Date updatedOn,
+      ChangeOperation operation) {
+    this.origin = origin;
+    this.entityType = entityType;
+    this.guid = guid;
+    this.updatedOn = updatedOn;
+    this.operation = operation;
+  }
+
+  /**
+   * @return the node which committed the change, see {@link ChangeEventBus#NODE}
+   */
+  public String getOrigin() {
+    return origin;
+  }
+
+  /**
+   * @return the class name of the entity
+   */
+  public String getEntityType() {
+    return entityType;
+  }
+
+  public String getGuid() {
+    return guid;
+  }
+
+  public Date getUpdatedOn() {
+    return updatedOn;
+  }
+
+  public ChangeOperation getOperation() {
+    return operation;
+  }
+
+  /**
+   * @return TRUE if the change was committed by another node
+   */
+  public boolean isRemote() {
+    return !ChangeEventBus.NODE.equals(origin);
+  }
+
+  /**
+   * @param entityClass the entity class
+   * @return TRUE if the changed entity is of the given class or of a subclass
+   */
+  public boolean is(Class<?> entityClass) {
+    return entityClass.getName().equals(entityType) || SUBCLASSES.get(entityClass)
+        .computeIfAbsent(entityType, type -> isSubclass(entityClass, type));
+  }
+
+  private static boolean isSubclass(Class<?> entityClass, String type) {
+    try {
+      return entityClass.isAssignableFrom(Class.forName(type, false, entityClass.getClassLoader()));
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  ChangeEvent merge(ChangeEvent next) {
+    if (operation == ChangeOperation.CREATE && (next.operation == ChangeOperation.DELETE
+        || next.operation == ChangeOperation.ARCHIVE)) {
+      return null;
+    }
+    if (operation == ChangeOperation.CREATE) {
+      return new ChangeEvent(origin, entityType, guid, next.updatedOn, operation);
+    }
+    return next;
+  }
+
+  @Override
+  public String toString() {
+    return operation + " " + entityType + " " + guid;
+  }
+
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.utils.JpaLog;
+
+/**
+ * The in-process bus of the committed changes of the entities
+ * <ul>
+ * <li>the {@link ChangeEventListener} publishes the changes of a transaction after its commit</li>
+ * <li>the events are queued in a lock-free ring, a full ring drops the events and counts them</li>
+ * <li>a dispatcher drains the ring in batches, hands them to the {@link ChangeSubscriber}s and
+ * sends the local ones through the {@link ChangeTransport}s</li>
+ * <li>the events received from the other nodes go through the same ring</li>
+ * </ul>
+ * The dispatcher is started by the first {@link ro.brage.dodo.jpa.EntityService} on its managed
+ * executor, until there's a subscriber or a transport no event is produced.
+ * 
+ * @author Dorin Brage
+ */
+public class ChangeEventBus {
+
+  private final static Logger LOG = LoggerFactory.getLogger(ChangeEventBus.class);
+
+  /**
+   * Identifies the events committed by this node
+   */
+  public final static String NODE = UUID.randomUUID().toString();
+
+  protected final static int CAPACITY = 65536;
+  protected final static int BATCH_SIZE = 512;
+  protected final static long DISPATCH_INTERVAL = 10;
+
+  private final static ChangeRing RING = new ChangeRing(CAPACITY);
+  private final static List<ChangeSubscriber> SUBSCRIBERS = new CopyOnWriteArrayList<>();
+  private final static List<ChangeTransport> TRANSPORTS = new CopyOnWriteArrayList<>();
+  private final static AtomicBoolean STARTED = new AtomicBoolean();
+  private final static LongAdder DROPPED = new LongAdder();
+
+  private static volatile ScheduledExecutorService executor;
+
+  private ChangeEventBus() {}
+
+  /**
+   * Start the dispatcher and open the transports found by the {@link ServiceLoader}, only the
+   * first call has an effect
+   *
+   * @param executor the managed executor
+   */
+  public static void start(ScheduledExecutorService executor) {
+    if (!STARTED.compareAndSet(false, true)) {
+      return;
+    }
+    ChangeEventBus.executor = executor;
+    ServiceLoader.load(ChangeTransport.class).forEach(TRANSPORTS::add);
+    TRANSPORTS.forEach(transport -> transport.open(executor, ChangeEventBus::receive));
+    executor.scheduleWithFixedDelay(ChangeEventBus::dispatch, DISPATCH_INTERVAL,
+        DISPATCH_INTERVAL, TimeUnit.MILLISECONDS);
+  }
+
+  public static void subscribe(ChangeSubscriber subscriber) {
+    SUBSCRIBERS.add(subscriber);
+  }
+
+  public static void unsubscribe(ChangeSubscriber subscriber) {
+    SUBSCRIBERS.remove(subscriber);
+  }
+
+  /**
+   * Add a transport, it's opened if the bus is already started
+   *
+   * @param transport the transport
+   */
+  public static void addTransport(ChangeTransport transport) {
+    TRANSPORTS.add(transport);
+    if (executor != null) {
+      transport.open(executor, ChangeEventBus::receive);
+    }
+  }
+
+  /**
+   * @return TRUE if the events are consumed by a subscriber or a transport
+   */
+  public static boolean isActive() {
+    return STARTED.get() && !(SUBSCRIBERS.isEmpty() && TRANSPORTS.isEmpty());
+  }
+
+  /**
+   * @return TRUE if the bus is started and has transports, all of them connected
+   */
+  public static boolean isConnected() {
+    return STARTED.get() && !TRANSPORTS.isEmpty()
+        && TRANSPORTS.stream().allMatch(ChangeTransport::isConnected);
+  }
+
+  /**
+   * @return the number of events dropped because the ring was full
+   */
+  public static long getDropped() {
+    return DROPPED.sum();
+  }
+
+  /**
+   * Publish the committed changes
+   *
+   * @param events the events
+   */
+  public static void publish(Iterable<ChangeEvent> events) {
+    for (ChangeEvent event : events) {
+      if (!RING.offer(event)) {
+        DROPPED.increment();
+      }
+    }
+  }
+
+  private static void receive(List<ChangeEvent> events) {
+    publish(events);
+  }
+
+  /**
+   * Drain the ring until it's empty, it runs on one thread at a time
+   */
+  private static void dispatch() {
+    List<ChangeEvent> batch = new ArrayList<>(BATCH_SIZE);
+    while (RING.drain(batch, BATCH_SIZE) > 0) {
+      for (ChangeSubscriber subscriber : SUBSCRIBERS) {
+        try {
+          subscriber.onEvents(batch);
+        } catch (Exception e) {
+          JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_DELIVER_EVENTS, e, null);
+        }
+      }
+      if (!TRANSPORTS.isEmpty()) {
+        List<ChangeEvent> local = new ArrayList<>(batch.size());
+        batch.forEach(event -> {
+          if (!event.isRemote()) {
+            local.add(event);
+          }
+        });
+        for (ChangeTransport transport : TRANSPORTS) {
+          try {
+            if (!local.isEmpty()) {
+              transport.send(local);
+            }
+          } catch (Exception e) {
+            JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_DELIVER_EVENTS, e, null);
+          }
+        }
+      }
+      batch = new ArrayList<>(BATCH_SIZE);
+    }
+  }
+
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.events;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.enums.ChangeOperation;
+
+/**
+ * Collects the changes of the entities within the running transaction and publishes them to the
+ * {@link ChangeEventBus} after the commit. The changes of the same entity are merged, e.g. an
+ * entity created and deleted within the same transaction publishes nothing.
+ * 
+ * @author Dorin Brage
+ */
+public class ChangeEventListener {
+
+  private final static String REGISTRY = "java:comp/TransactionSynchronizationRegistry";
+
+  private final static String CHANGES = ChangeEventListener.class.getName() + ".changes";
+
+  private final static String ARCHIVING = ChangeEventListener.class.getName() + ".archiving";
+
+  private static volatile TransactionSynchronizationRegistry registry;
+
+  @PostPersist
+  public void created(Model entity) {
+    changed(entity, entity.getUpdatedOn(), ChangeOperation.CREATE);
+  }
+
+  @PostUpdate
+  public void updated(Model entity) {
+    changed(entity, entity.getUpdatedOn(), ChangeOperation.UPDATE);
+  }
+
+  @PostRemove
+  public void removed(Model entity) {
+    TransactionSynchronizationRegistry registry = lookupRegistry();
+    boolean archiving = registry != null
+        && registry.getTransactionStatus() == Status.STATUS_ACTIVE
+        && registry.getResource(ARCHIVING) != null;
+    changed(entity, new Date(), archiving ? ChangeOperation.ARCHIVE : ChangeOperation.DELETE);
+  }
+
+  /**
+   * Mark the removals of the running transaction as moves to the archive, they're published as
+   * {@link ChangeOperation#ARCHIVE} instead of {@link ChangeOperation#DELETE}
+   */
+  public static void archiving() {
+    TransactionSynchronizationRegistry registry = lookupRegistry();
+    if (registry != null && registry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+      registry.putResource(ARCHIVING, Boolean.TRUE);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void changed(Model entity, Date updatedOn, ChangeOperation operation) {
+    if (!ChangeEventBus.isActive()) {
+      return;
+    }
+    ChangeEvent event = new ChangeEvent(ChangeEventBus.NODE, entity.getClass().getName(),
+        entity.getGuid(), updatedOn, operation);
+
+    TransactionSynchronizationRegistry registry = lookupRegistry();
+    if (registry == null || registry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+      ChangeEventBus.publish(Collections.singletonList(event));
+      return;
+    }
+    Map<String, ChangeEvent> changes = (Map<String, ChangeEvent>) registry.getResource(CHANGES);
+    if (changes == null) {
+      Map<String, ChangeEvent> registered = new LinkedHashMap<>();
+      registry.putResource(CHANGES, registered);
+      registry.registerInterposedSynchronization(new Synchronization() {
+
+        @Override
+        public void beforeCompletion() {}
+
+        @Override
+        public void afterCompletion(int status) {
+          if (status == Status.STATUS_COMMITTED) {
+            ChangeEventBus.publish(registered.values());
+          }
+        }
+      });
+      changes = registered;
+    }
+    String key = event.getEntityType() + ":" + event.getGuid();
+    ChangeEvent previous = changes.remove(key);
+    ChangeEvent merged = previous == null ? event : previous.merge(event);
+    if (merged != null) {
+      changes.put(key, merged);
+    }
+  }
+
+  private static TransactionSynchronizationRegistry lookupRegistry() {
+    if (registry == null) {
+      try {
+        registry = InitialContext.doLookup(REGISTRY);
+      } catch (NamingException e) {
+        return null;
+      }
+    }
+    return registry;
+  }
+
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.events;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free ring buffer with many producers and a single consumer. Every slot has a
+ * sequence telling whether it's free for the producer of a position or filled for the consumer.
+ * 
+ * @author Dorin Brage
+ */
+class ChangeRing {
+
+  private final int mask;
+  private final AtomicReferenceArray<ChangeEvent> events;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private long head;
+
+  /**
+   * @param capacity the capacity, rounded up to a power of two
+   */
+  ChangeRing(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    this.mask = size - 1;
+    this.events = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * @return FALSE if the ring is full
+   */
+  boolean offer(ChangeEvent event) {
+    while (true) {
+      long position = tail.get();
+      int slot = (int) (position & mask);
+      long sequence = sequences.get(slot);
+      if (sequence == position) {
+        if (tail.compareAndSet(position, position + 1)) {
+          events.lazySet(slot, event);
+          sequences.set(slot, position + 1);
+          return true;
+        }
+      } else if (sequence < position) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Move up to <code>max</code> events to the batch, only called by the consumer
+   *
+   * @return the number of moved events
+   */
+  int drain(List<ChangeEvent> batch, int max) {
+    int drained = 0;
+    while (drained < max) {
+      int slot = (int) (head & mask);
+      if (sequences.get(slot) != head + 1) {
+        break;
+      }
+      batch.add(events.get(slot));
+      events.lazySet(slot, null);
+      sequences.set(slot, head + mask + 1);
+      head++;
+      drained++;
+    }
+    return drained;
+  }
+
+}
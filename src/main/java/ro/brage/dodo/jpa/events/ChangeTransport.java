@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.events;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts the {@link ChangeEvent}s to the other nodes. The transports are registered with
+ * {@link ChangeEventBus#addTransport(ChangeTransport)} or discovered through the
+ * {@link java.util.ServiceLoader}.
+ * 
+ * @author Dorin Brage
+ */
+public interface ChangeTransport {
+
+  /**
+   * Start receiving the events of the other nodes
+   *
+   * @param executor the executor for the background work
+   * @param receiver receives the events of the other nodes
+   */
+  void open(ScheduledExecutorService executor, Consumer<List<ChangeEvent>> receiver);
+
+  /**
+   * Send a batch of events committed by this node
+   *
+   * @param events the events
+   */
+  void send(List<ChangeEvent> events);
+
+  /**
+   * @return FALSE while the events of the other nodes may be missed, e.g. the connection is lost
+   */
+  default boolean isConnected() {
+    return true;
+  }
+
+  void close();
+
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.events;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.brage.dodo.jpa.enums.ChangeOperation;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.utils.JpaLog;
+
+/**
+ * A transport for local testing, the nodes append their events to a shared file and tail it.
+ * Register it by {@link ChangeEventBus#addTransport(ChangeTransport)} or through
+ * <code>META-INF/services/ro.brage.dodo.jpa.events.ChangeTransport</code>, then the file is given
+ * by the <code>dodo.events.file</code> system property.
+ * 
+ * @author Dorin Brage
+ */
+public class FileTransport implements ChangeTransport {
+
+  private final static Logger LOG = LoggerFactory.getLogger(FileTransport.class);
+
+  public final static String FILE_PROPERTY = "dodo.events.file";
+
+  protected final static long POLL_INTERVAL = 100;
+
+  private final Path file;
+  private long position;
+  private ScheduledFuture<?> poller;
+  private volatile boolean connected;
+  private volatile boolean closed;
+
+  public FileTransport() {
+    this(Paths.get(System.getProperty(FILE_PROPERTY, "dodo-events.log")));
+  }
+
+  public FileTransport(Path file) {
+    this.file = file;
+  }
+
+  @Override
+  public void open(ScheduledExecutorService executor, Consumer<List<ChangeEvent>> receiver) {
+    try {
+      position = Files.exists(file) ? Files.size(file) : 0;
+      connected = true;
+    } catch (IOException e) {
+      JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_DELIVER_EVENTS, e, null);
+    }
+    poller = executor.scheduleWithFixedDelay(() -> poll(receiver), POLL_INTERVAL, POLL_INTERVAL,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void send(List<ChangeEvent> events) {
+    StringBuilder lines = new StringBuilder();
+    events.forEach(event -> lines.append(event.getOrigin()).append('|')
+        .append(event.getEntityType()).append('|').append(event.getGuid()).append('|')
+        .append(event.getUpdatedOn() == null ? "" : event.getUpdatedOn().getTime()).append('|')
+        .append(event.getOperation()).append('\n'));
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        FileLock lock = channel.lock()) {
+      channel.write(ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8)));
+    } catch (IOException e) {
+      JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_DELIVER_EVENTS, e, null);
+    }
+  }
+
+  @Override
+  public boolean isConnected() {
+    return connected;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    connected = false;
+    if (poller != null) {
+      poller.cancel(false);
+    }
+  }
+
+  /**
+   * Read the complete lines appended since the last poll, a malformed line is skipped so it
+   * neither stops the poller nor is read again. A failed read disconnects the transport until
+   * the next successful one.
+   */
+  private void poll(Consumer<List<ChangeEvent>> receiver) {
+    List<ChangeEvent> events = new ArrayList<>();
+    try {
+      read(events);
+      connected = !closed;
+    } catch (IOException e) {
+      connected = false;
+      JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_DELIVER_EVENTS, e, null);
+    }
+    if (!events.isEmpty()) {
+      receiver.accept(events);
+    }
+  }
+
+  private void read(List<ChangeEvent> events) throws IOException {
+    if (!Files.exists(file)) {
+      return;
+    }
+    try (RandomAccessFile input = new RandomAccessFile(file.toFile(), "r")) {
+      if (input.length() <= position) {
+        return;
+      }
+      byte[] appended = new byte[(int) (input.length() - position)];
+      input.seek(position);
+      input.readFully(appended);
+
+      int start = 0;
+      for (int i = 0; i < appended.length; i++) {
+        if (appended[i] == '\n') {
+          String line = new String(appended, start, i - start, StandardCharsets.UTF_8);
+          try {
+            ChangeEvent event = parse(line);
+            if (event != null && event.isRemote()) {
+              events.add(event);
+            }
+          } catch (RuntimeException e) {
+            LOG.warn("Skipped the malformed event {}", line);
+          }
+          start = i + 1;
+        }
+      }
+      position += start;
+    }
+  }
+
+  private ChangeEvent parse(String line) {
+    String[] fields = line.split("\\|", -1);
+    if (fields.length != 5) {
+      return null;
+    }
+    return new ChangeEvent(fields[0], fields[1], fields[2],
+        fields[3].isEmpty() ? null : new Date(Long.parseLong(fields[3])),
+        ChangeOperation.valueOf(fields[4]));
+  }
+
+}
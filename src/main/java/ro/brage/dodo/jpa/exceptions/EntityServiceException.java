@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.exceptions;
+
+import javax.ejb.ApplicationException;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+
+/**
+ * The exception thrown by the {@link ro.brage.dodo.jpa.EntityService} when an operation can't be
+ * fulfilled. The cause is identified by its {@link JpaErrorKeys}. It isn't wrapped by the EJB
+ * container, so it reaches the rest layer as it is.
+ * 
+ * @author Dorin Brage
+ */
+@ApplicationException(rollback = true)
+public class EntityServiceException extends RuntimeException {
+
+  private static final long serialVersionUID = 4829117035641320977L;
+
+  private final JpaErrorKeys key;
+
+  public EntityServiceException(JpaErrorKeys key, String message) {
+    super(key + ": " + message);
+    this.key = key;
+  }
+
+  public EntityServiceException(JpaErrorKeys key, String message, Throwable cause) {
+    super(key + ": " + message, cause);
+    this.key = key;
+  }
+
+  public JpaErrorKeys getKey() {
+    return key;
+  }
+
+}
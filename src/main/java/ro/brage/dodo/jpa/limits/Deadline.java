@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.limits;
+
+import java.util.function.Supplier;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.exceptions.EntityServiceException;
+
+/**
+ * The deadline of the running operation, see
+ * {@link ro.brage.dodo.rs.annotations.OperationTimeout}. The queries run before the deadline get
+ * the remaining time as their timeout, so the statement of an operation taking too long is
+ * cancelled by the database driver.
+ * 
+ * @author Dorin Brage
+ */
+public class Deadline {
+
+  private final static ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+  private Deadline() {}
+
+  /**
+   * Run an operation within a time limit, the limit of an enclosing operation is kept. Only the
+   * work started after the deadline fails, an operation whose writes were committed is never
+   * reported as timed out.
+   *
+   * @param timeout the time limit in milliseconds
+   * @param operation the operation
+   * @return the result of the operation
+   * @throws EntityServiceException with {@link JpaErrorKeys#OPERATION_TIMEOUT} if a query of the
+   *         operation ran out of time
+   */
+  public static <T> T run(long timeout, Supplier<T> operation) {
+    if (DEADLINE.get() != null) {
+      return operation.get();
+    }
+    return at(System.currentTimeMillis() + timeout, operation);
+  }
+
+  /**
+   * Run an operation on another thread within the deadline of the calling thread
+   *
+   * <pre>
+   * Long deadline = Deadline.get();
+   * executor.submit(() -&gt; Deadline.at(deadline, read));
+   * </pre>
+   *
+   * @param deadline the deadline in epoch milliseconds, or null for none
+   * @param operation the operation
+   * @return the result of the operation
+   */
+  public static <T> T at(Long deadline, Supplier<T> operation) {
+    Long previous = DEADLINE.get();
+    if (deadline == null) {
+      DEADLINE.remove();
+    } else {
+      DEADLINE.set(deadline);
+    }
+    try {
+      return operation.get();
+    } finally {
+      if (previous == null) {
+        DEADLINE.remove();
+      } else {
+        DEADLINE.set(previous);
+      }
+    }
+  }
+
+  /**
+   * @return the deadline in epoch milliseconds, or null if none is set
+   */
+  public static Long get() {
+    return DEADLINE.get();
+  }
+
+  /**
+   * @return the remaining milliseconds, or -1 if no deadline is set
+   */
+  public static long remaining() {
+    Long deadline = DEADLINE.get();
+    return deadline == null ? -1 : Math.max(0, deadline - System.currentTimeMillis());
+  }
+
+  /**
+   * @return TRUE if a deadline is set and passed
+   */
+  public static boolean isExpired() {
+    return remaining() == 0;
+  }
+
+  /**
+   * @throws EntityServiceException with {@link JpaErrorKeys#OPERATION_TIMEOUT} if the deadline
+   *         passed
+   */
+  public static void check() {
+    if (isExpired()) {
+      throw new EntityServiceException(JpaErrorKeys.OPERATION_TIMEOUT,
+          "The operation ran out of time");
+    }
+  }
+
+}
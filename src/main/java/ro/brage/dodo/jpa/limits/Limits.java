@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.limits;
+
+import java.util.function.Supplier;
+import ro.brage.dodo.jpa.annotations.QueryLimits;
+
+/**
+ * The limits of the queries, either of an entity ({@link QueryLimits}) or of a single call
+ * 
+ * <pre>
+ * List&lt;Car&gt; cars = Limits.apply(new Limits().maxResults(100).truncate(true),
+ *     () -&gt; getService().getResults("findByMake", params));
+ * </pre>
+ * 
+ * @author Dorin Brage
+ */
+public class Limits {
+
+  private final static ThreadLocal<Limits> CURRENT = new ThreadLocal<>();
+
+  private int timeout;
+  private int maxResults;
+  private Boolean truncate;
+
+  public Limits() {}
+
+  public Limits(QueryLimits limits) {
+    if (limits != null) {
+      this.timeout = limits.timeout();
+      this.maxResults = limits.maxResults();
+      this.truncate = limits.truncate();
+    }
+  }
+
+  /**
+   * Run a call with the given limits, they override the limits of the entity
+   *
+   * @param limits the limits
+   * @param call the call
+   * @return the result of the call
+   */
+  public static <T> T apply(Limits limits, Supplier<T> call) {
+    Limits previous = CURRENT.get();
+    CURRENT.set(limits);
+    try {
+      return call.get();
+    } finally {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+  }
+
+  /**
+   * @param defaults the limits of the entity
+   * @return the limits of the running call, overriding the given ones
+   */
+  public static Limits effective(Limits defaults) {
+    Limits call = CURRENT.get();
+    if (call == null) {
+      return defaults;
+    }
+    Limits effective = new Limits();
+    effective.timeout = call.timeout > 0 ? call.timeout : defaults.timeout;
+    effective.maxResults = call.maxResults > 0 ? call.maxResults : defaults.maxResults;
+    effective.truncate = call.truncate != null ? call.truncate : defaults.truncate;
+    return effective;
+  }
+
+  public Limits timeout(int timeout) {
+    this.timeout = timeout;
+    return this;
+  }
+
+  public Limits maxResults(int maxResults) {
+    this.maxResults = maxResults;
+    return this;
+  }
+
+  public Limits truncate(boolean truncate) {
+    this.truncate = truncate;
+    return this;
+  }
+
+  public int getTimeout() {
+    return timeout;
+  }
+
+  public int getMaxResults() {
+    return maxResults;
+  }
+
+  public boolean isTruncate() {
+    return Boolean.TRUE.equals(truncate);
+  }
+
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.limits;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * The results of a query truncated to its {@link Limits#getMaxResults()}
+ * 
+ * @author Dorin Brage
+ * @param <E> the type of the results
+ */
+public class ResultList<E> extends ArrayList<E> {
+
+  private static final long serialVersionUID = -2183914403474630196L;
+
+  private final boolean truncated;
+
+  public ResultList(Collection<? extends E> results, boolean truncated) {
+    super(results);
+    this.truncated = truncated;
+  }
+
+  /**
+   * @param results the results of a query
+   * @return TRUE if the results were truncated
+   */
+  public static boolean isTruncated(Collection<?> results) {
+    return results instanceof ResultList && ((ResultList<?>) results).truncated;
+  }
+
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+}
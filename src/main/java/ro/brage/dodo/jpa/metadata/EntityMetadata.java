@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.metadata;
+
+import java.util.List;
+import java.util.Map;
+import ro.brage.dodo.jpa.Model;
+
+/**
+ * The static description of an entity, generated at compile time for the entities annotated with
+ * {@link ro.brage.dodo.jpa.annotations.GenerateServices}
+ * 
+ * @author Dorin Brage
+ * @param <ENTITY> the ENTITY
+ */
+public interface EntityMetadata<ENTITY extends Model> {
+
+  /**
+   * @return the entity class
+   */
+  Class<ENTITY> getEntityClass();
+
+  /**
+   * @return the name of the entity within JPQL queries
+   */
+  String getEntityName();
+
+  /**
+   * @param name the short name of the query, e.g. <code>findAll</code>
+   * @return the full name of the named query, e.g. <code>Car.findAll</code>
+   */
+  String getQueryName(String name);
+
+  /**
+   * @return the name of the entity graph used by <code>loadByGuid</code>
+   */
+  String getLoadGraph();
+
+  /**
+   * @return the full names of the entity's named queries
+   */
+  List<String> getNamedQueries();
+
+  /**
+   * @return the names of the entity's named entity graphs
+   */
+  List<String> getEntityGraphs();
+
+  /**
+   * @return the persistent attributes the entity can be filtered by
+   */
+  List<String> getAttributes();
+
+  /**
+   * @return the {@link ro.brage.dodo.jpa.annotations.Searchable} fields with their boost
+   */
+  Map<String, Integer> getSearchableFields();
+
+  /**
+   * @return the {@link ro.brage.dodo.jpa.annotations.Aggregatable} attributes
+   */
+  List<String> getAggregatableAttributes();
+
+  /**
+   * @return the full names of the named queries having an ORDER BY
+   */
+  List<String> getOrderedQueries();
+
+}
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.metadata;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import ro.brage.dodo.jpa.Model;
+
+/**
+ * The registry of the generated {@link EntityMetadata}, every generated metadata registers itself
+ * when its class is initialized
+ * 
+ * @author Dorin Brage
+ */
+public class MetadataRegistry {
+
+  private final static Map<Class<?>, EntityMetadata<?>> METADATA = new ConcurrentHashMap<>();
+
+  private MetadataRegistry() {}
+
+  public static void register(EntityMetadata<?> metadata) {
+    METADATA.put(metadata.getEntityClass(), metadata);
+  }
+
+  /**
+   * @param entityClass the entity class
+   * @return the metadata or null if none was registered
+   */
+  @SuppressWarnings("unchecked")
+  public static <ENTITY extends Model> EntityMetadata<ENTITY> get(Class<ENTITY> entityClass) {
+    return (EntityMetadata<ENTITY>) METADATA.get(entityClass);
+  }
+
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.metadata;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.persistence.Entity;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedEntityGraphs;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Transient;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.annotations.Aggregatable;
+import ro.brage.dodo.jpa.annotations.Searchable;
+
+/**
+ * The {@link EntityMetadata} read through reflection, used by the services of the entities
+ * without generated metadata
+ * 
+ * @author Dorin Brage
+ * @param <ENTITY> the ENTITY
+ */
+public class ReflectiveMetadata<ENTITY extends Model> implements EntityMetadata<ENTITY> {
+
+  private final static Pattern ORDER_BY =
+      Pattern.compile("\\border\\s+by\\b", Pattern.CASE_INSENSITIVE);
+
+  private final Class<ENTITY> entityClass;
+  private final String entityName;
+
+  public ReflectiveMetadata(Class<ENTITY> entityClass) {
+    this.entityClass = entityClass;
+    Entity entity = entityClass.getAnnotation(Entity.class);
+    this.entityName = entity == null || entity.name().isEmpty() ? entityClass.getSimpleName()
+        : entity.name();
+  }
+
+  @Override
+  public Class<ENTITY> getEntityClass() {
+    return entityClass;
+  }
+
+  @Override
+  public String getEntityName() {
+    return entityName;
+  }
+
+  @Override
+  public String getQueryName(String name) {
+    return entityClass.getSimpleName() + "." + name;
+  }
+
+  @Override
+  public String getLoadGraph() {
+    return entityClass.getSimpleName() + ".loadByGuid";
+  }
+
+  @Override
+  public List<String> getNamedQueries() {
+    List<String> names = new ArrayList<>();
+    findNamedQueries().forEach(query -> names.add(query.name()));
+    return Collections.unmodifiableList(names);
+  }
+
+  @Override
+  public List<String> getEntityGraphs() {
+    List<String> names = new ArrayList<>();
+    NamedEntityGraph graph = entityClass.getAnnotation(NamedEntityGraph.class);
+    if (graph != null) {
+      names.add(graph.name());
+    }
+    NamedEntityGraphs graphs = entityClass.getAnnotation(NamedEntityGraphs.class);
+    if (graphs != null) {
+      for (NamedEntityGraph namedGraph : graphs.value()) {
+        names.add(namedGraph.name());
+      }
+    }
+    return Collections.unmodifiableList(names);
+  }
+
+  @Override
+  public List<String> getAttributes() {
+    List<String> attributes = new ArrayList<>();
+    for (Class<?> type = entityClass; type != Object.class; type = type.getSuperclass()) {
+      List<String> declared = new ArrayList<>();
+      for (Field field : type.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+            && !field.isAnnotationPresent(Transient.class)) {
+          declared.add(field.getName());
+        }
+      }
+      attributes.addAll(0, declared);
+    }
+    return Collections.unmodifiableList(attributes);
+  }
+
+  @Override
+  public Map<String, Integer> getSearchableFields() {
+    Map<String, Integer> fields = new LinkedHashMap<>();
+    for (Class<?> type = entityClass; type != null; type = type.getSuperclass()) {
+      for (Field field : type.getDeclaredFields()) {
+        Searchable searchable = field.getAnnotation(Searchable.class);
+        if (searchable != null) {
+          fields.putIfAbsent(field.getName(), searchable.boost());
+        }
+      }
+    }
+    return Collections.unmodifiableMap(fields);
+  }
+
+  @Override
+  public List<String> getAggregatableAttributes() {
+    return findAggregatableAttributes(entityClass);
+  }
+
+  @Override
+  public List<String> getOrderedQueries() {
+    List<String> names = new ArrayList<>();
+    findNamedQueries().forEach(query -> {
+      if (ORDER_BY.matcher(query.query()).find()) {
+        names.add(query.name());
+      }
+    });
+    return Collections.unmodifiableList(names);
+  }
+
+  /**
+   * @param entityClass the entity class
+   * @return the {@link Aggregatable} fields of the class and of its superclasses
+   */
+  public static List<String> findAggregatableAttributes(Class<?> entityClass) {
+    List<String> attributes = new ArrayList<>();
+    for (Class<?> type = entityClass; type != null; type = type.getSuperclass()) {
+      for (Field field : type.getDeclaredFields()) {
+        if (field.isAnnotationPresent(Aggregatable.class)) {
+          attributes.add(field.getName());
+        }
+      }
+    }
+    return Collections.unmodifiableList(attributes);
+  }
+
+  private List<NamedQuery> findNamedQueries() {
+    List<NamedQuery> found = new ArrayList<>();
+    NamedQuery query = entityClass.getAnnotation(NamedQuery.class);
+    if (query != null) {
+      found.add(query);
+    }
+    NamedQueries queries = entityClass.getAnnotation(NamedQueries.class);
+    if (queries != null) {
+      found.addAll(Arrays.asList(queries.value()));
+    }
+    return found;
+  }
+
+}
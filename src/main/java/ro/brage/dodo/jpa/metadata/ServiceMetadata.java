@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.metadata;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import ro.brage.dodo.jpa.EntityService;
+import ro.brage.dodo.jpa.annotations.AggregateCache;
+import ro.brage.dodo.jpa.annotations.Archival;
+import ro.brage.dodo.jpa.annotations.ExistenceFilter;
+import ro.brage.dodo.jpa.annotations.QueryCache;
+import ro.brage.dodo.jpa.annotations.QueryLimits;
+import ro.brage.dodo.jpa.annotations.ReadFromReplica;
+import ro.brage.dodo.jpa.annotations.Sharded;
+import ro.brage.dodo.jpa.annotations.WriteBehind;
+
+/**
+ * The entity and the annotations of an {@link EntityService} class. They're read once per class,
+ * not by every pooled instance of the service.
+ * 
+ * @author Dorin Brage
+ */
+public final class ServiceMetadata {
+
+  private final static ClassValue<ServiceMetadata> SERVICES = new ClassValue<ServiceMetadata>() {
+
+    @Override
+    protected ServiceMetadata computeValue(Class<?> serviceClass) {
+      return new ServiceMetadata(serviceClass);
+    }
+  };
+
+  private final Class<?> entityClass;
+  private final ReadFromReplica readFromReplica;
+  private final AggregateCache aggregateCache;
+  private final Sharded sharded;
+  private final QueryLimits queryLimits;
+  private final QueryCache queryCache;
+  private final WriteBehind writeBehind;
+  private final Archival archival;
+  private final ExistenceFilter existenceFilter;
+
+  /**
+   * @param serviceClass the class of the service, it can be a subclass generated by the container
+   * @return the metadata of the service
+   */
+  public static ServiceMetadata of(Class<?> serviceClass) {
+    return SERVICES.get(serviceClass);
+  }
+
+  /**
+   * Used by the generated services, which carry none of the service annotations
+   *
+   * @param entityClass the entity class
+   * @return the metadata of a service without annotations
+   */
+  public static ServiceMetadata unannotated(Class<?> entityClass) {
+    return new ServiceMetadata(entityClass, null);
+  }
+
+  private ServiceMetadata(Class<?> entityClass, Void unannotated) {
+    this.entityClass = entityClass;
+    this.readFromReplica = null;
+    this.aggregateCache = null;
+    this.sharded = null;
+    this.queryLimits = null;
+    this.queryCache = null;
+    this.writeBehind = null;
+    this.archival = null;
+    this.existenceFilter = null;
+  }
+
+  private ServiceMetadata(Class<?> serviceClass) {
+    this.entityClass = findEntityClass(serviceClass);
+    this.readFromReplica = serviceClass.getAnnotation(ReadFromReplica.class);
+    this.aggregateCache = serviceClass.getAnnotation(AggregateCache.class);
+    this.sharded = serviceClass.getAnnotation(Sharded.class);
+    this.queryLimits = serviceClass.getAnnotation(QueryLimits.class);
+    this.queryCache = serviceClass.getAnnotation(QueryCache.class);
+    this.writeBehind = serviceClass.getAnnotation(WriteBehind.class);
+    this.archival = serviceClass.getAnnotation(Archival.class);
+    this.existenceFilter = serviceClass.getAnnotation(ExistenceFilter.class);
+  }
+
+  /**
+   * The type argument of <code>EntityService&lt;ENTITY&gt;</code>
+   */
+  private static Class<?> findEntityClass(Class<?> serviceClass) {
+    for (Class<?> type = serviceClass; type != null; type = type.getSuperclass()) {
+      Type superclass = type.getGenericSuperclass();
+      if (superclass instanceof ParameterizedType
+          && ((ParameterizedType) superclass).getRawType() == EntityService.class) {
+        Type argument = ((ParameterizedType) superclass).getActualTypeArguments()[0];
+        return argument instanceof Class ? (Class<?>) argument : null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the entity class, or null if the service doesn't bind it
+   */
+  public Class<?> getEntityClass() {
+    return entityClass;
+  }
+
+  public ReadFromReplica getReadFromReplica() {
+    return readFromReplica;
+  }
+
+  public AggregateCache getAggregateCache() {
+    return aggregateCache;
+  }
+
+  public Sharded getSharded() {
+    return sharded;
+  }
+
+  public QueryLimits getQueryLimits() {
+    return queryLimits;
+  }
+
+  public QueryCache getQueryCache() {
+    return queryCache;
+  }
+
+  public WriteBehind getWriteBehind() {
+    return writeBehind;
+  }
+
+  public Archival getArchival() {
+    return archival;
+  }
+
+  public ExistenceFilter getExistenceFilter() {
+    return existenceFilter;
+  }
+
+}
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.routing;
+
+import java.io.Serializable;
+import javax.annotation.Priority;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+import ro.brage.dodo.jpa.annotations.ReadOnly;
+
+/**
+ * Flags the {@link ReadOnly} methods for the {@link ReadWriteRouter}
+ * 
+ * @author Dorin Brage
+ */
+@ReadOnly
+@Interceptor
+@Priority(Interceptor.Priority.LIBRARY_BEFORE)
+public class ReadOnlyInterceptor implements Serializable {
+
+  private static final long serialVersionUID = -2418873040129532785L;
+
+  @AroundInvoke
+  public Object readOnly(InvocationContext context) throws Exception {
+    ReadWriteRouter.enterReadOnly();
+    try {
+      return context.proceed();
+    } finally {
+      ReadWriteRouter.exitReadOnly();
+    }
+  }
+
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.routing;
+
+/**
+ * Keeps the routing state of the read/write splitting: the read-only methods running on the
+ * current thread and until when the current caller is pinned to the primary after a write. The pin
+ * travels between the requests of a caller as a token, see
+ * {@link ro.brage.dodo.rs.providers.PinnedReadsFilter}.
+ * 
+ * @author Dorin Brage
+ */
+public class ReadWriteRouter {
+
+  private final static ThreadLocal<int[]> READ_ONLY = ThreadLocal.withInitial(() -> new int[1]);
+
+  /** the time in epoch milliseconds until which the current caller reads from the primary */
+  private final static ThreadLocal<long[]> PINNED_UNTIL =
+      ThreadLocal.withInitial(() -> new long[1]);
+
+  private ReadWriteRouter() {}
+
+  static void enterReadOnly() {
+    READ_ONLY.get()[0]++;
+  }
+
+  static void exitReadOnly() {
+    READ_ONLY.get()[0]--;
+  }
+
+  /**
+   * @return TRUE if a {@link ro.brage.dodo.jpa.annotations.ReadOnly} method is running
+   */
+  public static boolean isReadOnly() {
+    return READ_ONLY.get()[0] > 0;
+  }
+
+  /**
+   * Pin the current caller to the primary
+   *
+   * @param millis for how long
+   */
+  public static void pin(long millis) {
+    if (millis <= 0) {
+      return;
+    }
+    long[] until = PINNED_UNTIL.get();
+    until[0] = Math.max(until[0], System.currentTimeMillis() + millis);
+  }
+
+  /**
+   * @return TRUE if the current caller wrote recently and must read from the primary
+   */
+  public static boolean isPinned() {
+    return PINNED_UNTIL.get()[0] > System.currentTimeMillis();
+  }
+
+  /**
+   * @return the time in epoch milliseconds until which the current caller is pinned, 0 if never
+   */
+  public static long getPinnedUntil() {
+    return PINNED_UNTIL.get()[0];
+  }
+
+  /**
+   * Restore the pin of the caller starting to run on the current thread
+   *
+   * @param until the time in epoch milliseconds, 0 for none
+   */
+  public static void setPinnedUntil(long until) {
+    PINNED_UNTIL.get()[0] = until;
+  }
+
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.search;
+
+import java.util.Arrays;
+
+/**
+ * The posting list of a term: the ascending document ids containing it and the term's frequency
+ * within each of them, stored as primitive arrays
+ * 
+ * @author Dorin Brage
+ */
+class Postings {
+
+  int[] docs = new int[4];
+  int[] frequencies = new int[4];
+  int size;
+
+  void add(int doc, int frequency) {
+    if (size > 0 && docs[size - 1] == doc) {
+      frequencies[size - 1] += frequency;
+      return;
+    }
+    if (size == docs.length) {
+      docs = Arrays.copyOf(docs, size * 2);
+      frequencies = Arrays.copyOf(frequencies, size * 2);
+    }
+    docs[size] = doc;
+    frequencies[size] = frequency;
+    size++;
+  }
+
+  /**
+   * Drops the deleted documents and renumbers the others
+   *
+   * @param remap the new id of every document, -1 if deleted
+   */
+  void compact(int[] remap) {
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      int doc = remap[docs[i]];
+      if (doc >= 0) {
+        docs[kept] = doc;
+        frequencies[kept] = frequencies[i];
+        kept++;
+      }
+    }
+    size = kept;
+  }
+
+}
@@ -0,0 +1,400 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.search;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.annotations.Searchable;
+
+/**
+ * The in-memory inverted index of the {@link Searchable} fields of an entity. The fields are split
+ * in lower-cased alphanumeric terms, every term points to the {@link Postings} of the documents
+ * containing it.
+ * <ul>
+ * <li>every token of the query matches the terms starting with it and a document must match all
+ * the tokens</li>
+ * <li>the documents are ranked by the sum of <code>frequency * boost * idf</code> of the matched
+ * terms</li>
+ * <li>an updated entity gets a new document id, the old one is only flagged as deleted until the
+ * deleted documents outnumber the live ones and the postings are compacted</li>
+ * </ul>
+ * 
+ * @author Dorin Brage
+ */
+public class SearchIndex {
+
+  private final static Logger LOG = LoggerFactory.getLogger(SearchIndex.class);
+
+  private final static Map<Class<?>, SearchIndex> INDEXES = new ConcurrentHashMap<>();
+
+  /** the maximum number of terms a query token is expanded to */
+  private final static int MAX_EXPANSIONS = 1024;
+
+  /** the maximum number of results of a query, whatever the caller asks for */
+  private final static int MAX_RESULTS = Integer.getInteger("dodo.search.maxResults", 1000);
+
+  private final Class<?> entityClass;
+  private final String[] fieldNames;
+  private final int[] boosts;
+  /** the indexed fields, looked up when the first entity is indexed */
+  private volatile Field[] fields;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final TreeMap<String, Postings> terms = new TreeMap<>();
+  private final Map<String, Integer> docIds = new HashMap<>();
+  private String[] guids = new String[1024];
+  private final BitSet deleted = new BitSet();
+  private int deletedCount;
+  private int maxDoc;
+  private boolean built;
+
+  /**
+   * Returns the index of the entity, creating it on the first call
+   *
+   * @param entityClass the entity class
+   * @param searchableFields the {@link Searchable} fields with their boost, see
+   *        {@link ro.brage.dodo.jpa.metadata.EntityMetadata#getSearchableFields()}
+   * @return the index or null if the entity has no {@link Searchable} field
+   */
+  public static SearchIndex forEntity(Class<?> entityClass,
+      Map<String, Integer> searchableFields) {
+    if (searchableFields.isEmpty()) {
+      return null;
+    }
+    return INDEXES.computeIfAbsent(entityClass,
+        key -> new SearchIndex(entityClass, searchableFields));
+  }
+
+  /**
+   * Returns the index of an already indexed entity class or of one of its superclasses
+   *
+   * @param type the class of the entity, it can be a proxy
+   * @return the index or null
+   */
+  static SearchIndex lookup(Class<?> type) {
+    for (; type != null && type != Model.class; type = type.getSuperclass()) {
+      SearchIndex index = INDEXES.get(type);
+      if (index != null) {
+        return index;
+      }
+    }
+    return null;
+  }
+
+  private SearchIndex(Class<?> entityClass, Map<String, Integer> searchableFields) {
+    this.entityClass = entityClass;
+    this.fieldNames = searchableFields.keySet().toArray(new String[searchableFields.size()]);
+    this.boosts = new int[fieldNames.length];
+    for (int i = 0; i < boosts.length; i++) {
+      boosts[i] = searchableFields.get(fieldNames[i]);
+    }
+  }
+
+  /**
+   * @return the names of the indexed fields
+   */
+  public List<String> getFieldNames() {
+    return Arrays.asList(fieldNames.clone());
+  }
+
+  /**
+   * Build the index once by reading the entities chunk by chunk
+   *
+   * @param nextChunk returns the rows, <code>[guid, field...]</code>, following the given GUID
+   *        ordered by GUID, null for the first chunk, an empty list after the last one
+   */
+  public void build(Function<String, List<Object[]>> nextChunk) {
+    synchronized (this) {
+      if (built) {
+        return;
+      }
+      long start = System.currentTimeMillis();
+      String last = null;
+      List<Object[]> rows;
+      while (!(rows = nextChunk.apply(last)).isEmpty()) {
+        lock.writeLock().lock();
+        try {
+          for (Object[] row : rows) {
+            add((String) row[0], Arrays.copyOfRange(row, 1, row.length));
+          }
+        } finally {
+          lock.writeLock().unlock();
+        }
+        last = (String) rows.get(rows.size() - 1)[0];
+      }
+      built = true;
+      LOG.info("Indexed {} {} in {} ms", docIds.size(), entityClass.getSimpleName(),
+          System.currentTimeMillis() - start);
+    }
+  }
+
+  /**
+   * @return the values of the indexed fields of an entity
+   */
+  Object[] values(Model entity) {
+    Field[] indexed = getFields();
+    Object[] values = new Object[indexed.length];
+    try {
+      for (int i = 0; i < indexed.length; i++) {
+        values[i] = indexed[i].get(entity);
+      }
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    return values;
+  }
+
+  private Field[] getFields() {
+    Field[] indexed = fields;
+    if (indexed == null) {
+      indexed = new Field[fieldNames.length];
+      for (int i = 0; i < fieldNames.length; i++) {
+        indexed[i] = findField(fieldNames[i]);
+      }
+      fields = indexed;
+    }
+    return indexed;
+  }
+
+  private Field findField(String name) {
+    for (Class<?> type = entityClass; type != null; type = type.getSuperclass()) {
+      try {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+      } catch (NoSuchFieldException e) {
+        // declared by a superclass
+      }
+    }
+    throw new IllegalStateException(entityClass.getName() + " has no field " + name);
+  }
+
+  /**
+   * Index, or re-index, an entity
+   *
+   * @param guid the GUID of the entity
+   * @param values the values of the indexed fields, see {@link #values(Model)}
+   */
+  void index(String guid, Object[] values) {
+    lock.writeLock().lock();
+    try {
+      add(guid, values);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Remove an entity from the index
+   */
+  void remove(String guid) {
+    lock.writeLock().lock();
+    try {
+      delete(guid);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Search the index
+   *
+   * @param text the text typed by the user
+   * @param maxResults the maximum number of GUIDs, at most <code>dodo.search.maxResults</code>
+   *        (1000 by default)
+   * @return the GUIDs, best match first
+   */
+  public List<String> search(String text, int maxResults) {
+    List<String> tokens = tokenize(text);
+    if (tokens.isEmpty() || maxResults <= 0) {
+      return new ArrayList<>();
+    }
+
+    lock.readLock().lock();
+    try {
+      int limit = Math.min(maxResults, Math.min(MAX_RESULTS, docIds.size()));
+      List<List<Postings>> expanded = new ArrayList<>(tokens.size());
+      BitSet hits = null;
+      for (String token : tokens) {
+        List<Postings> matched = new ArrayList<>();
+        BitSet tokenHits = new BitSet(maxDoc);
+        SortedMap<String, Postings> matches = terms.subMap(token, token + Character.MAX_VALUE);
+        for (Postings postings : matches.values()) {
+          if (matched.size() == MAX_EXPANSIONS) {
+            break;
+          }
+          matched.add(postings);
+          for (int i = 0; i < postings.size; i++) {
+            tokenHits.set(postings.docs[i]);
+          }
+        }
+        expanded.add(matched);
+        if (hits == null) {
+          hits = tokenHits;
+        } else {
+          hits.and(tokenHits);
+        }
+      }
+      hits.andNot(deleted);
+      if (limit <= 0 || hits.isEmpty()) {
+        return new ArrayList<>();
+      }
+
+      // only the documents matching all the tokens are scored
+      int[] docs = hits.stream().toArray();
+      float[] scores = new float[docs.length];
+      for (List<Postings> matched : expanded) {
+        for (Postings postings : matched) {
+          float idf = (float) Math.log(1 + (double) docIds.size() / postings.size);
+          for (int i = 0; i < postings.size; i++) {
+            if (hits.get(postings.docs[i])) {
+              scores[Arrays.binarySearch(docs, postings.docs[i])] +=
+                  postings.frequencies[i] * idf;
+            }
+          }
+        }
+      }
+
+      PriorityQueue<Integer> top =
+          new PriorityQueue<>(limit + 1, (a, b) -> Float.compare(scores[a], scores[b]));
+      for (int hit = 0; hit < docs.length; hit++) {
+        top.add(hit);
+        if (top.size() > limit) {
+          top.poll();
+        }
+      }
+      String[] ranked = new String[top.size()];
+      for (int i = ranked.length - 1; i >= 0; i--) {
+        ranked[i] = guids[docs[top.poll()]];
+      }
+      return Arrays.asList(ranked);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of indexed entities
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return docIds.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Split a text in lower-cased alphanumeric terms
+   */
+  static List<String> tokenize(String text) {
+    List<String> tokens = new ArrayList<>();
+    if (text == null) {
+      return tokens;
+    }
+    String lower = text.toLowerCase(Locale.ROOT);
+    int start = -1;
+    for (int i = 0; i <= lower.length(); i++) {
+      boolean letter = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+      if (letter && start < 0) {
+        start = i;
+      } else if (!letter && start >= 0) {
+        tokens.add(lower.substring(start, i));
+        start = -1;
+      }
+    }
+    return tokens;
+  }
+
+  private void add(String guid, Object[] values) {
+    delete(guid);
+
+    Map<String, Integer> frequencies = new HashMap<>();
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] == null) {
+        continue;
+      }
+      for (String term : tokenize(values[i].toString())) {
+        frequencies.merge(term, boosts[i], Integer::sum);
+      }
+    }
+
+    int doc = maxDoc++;
+    if (doc == guids.length) {
+      guids = Arrays.copyOf(guids, doc * 2);
+    }
+    guids[doc] = guid;
+    docIds.put(guid, doc);
+    frequencies.forEach((term, frequency) -> terms
+        .computeIfAbsent(term, key -> new Postings()).add(doc, frequency));
+  }
+
+  private void delete(String guid) {
+    Integer doc = docIds.remove(guid);
+    if (doc == null) {
+      return;
+    }
+    deleted.set(doc);
+    deletedCount++;
+    guids[doc] = null;
+    if (deletedCount > docIds.size() && maxDoc > 1024) {
+      compact();
+    }
+  }
+
+  private void compact() {
+    int[] remap = new int[maxDoc];
+    int live = 0;
+    for (int doc = 0; doc < maxDoc; doc++) {
+      if (deleted.get(doc)) {
+        remap[doc] = -1;
+      } else {
+        remap[doc] = live;
+        guids[live] = guids[doc];
+        docIds.put(guids[live], live);
+        live++;
+      }
+    }
+    Arrays.fill(guids, live, maxDoc, null);
+    terms.values().removeIf(postings -> {
+      postings.compact(remap);
+      return postings.size == 0;
+    });
+    deleted.clear();
+    deletedCount = 0;
+    maxDoc = live;
+  }
+
+}
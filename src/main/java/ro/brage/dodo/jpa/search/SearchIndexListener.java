@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import ro.brage.dodo.jpa.Model;
+
+/**
+ * Keeps the {@link SearchIndex} of the entity, if any, in sync with the database. The callbacks
+ * run when the changes are flushed, the indexed values are captured then and applied after the
+ * commit, so a rolled back change never reaches the index.
+ * 
+ * @author Dorin Brage
+ */
+public class SearchIndexListener {
+
+  private final static String REGISTRY = "java:comp/TransactionSynchronizationRegistry";
+
+  private final static String CHANGES = SearchIndexListener.class.getName() + ".changes";
+
+  private static volatile TransactionSynchronizationRegistry registry;
+
+  @PostPersist
+  @PostUpdate
+  public void index(Model entity) {
+    SearchIndex index = SearchIndex.lookup(entity.getClass());
+    if (index != null) {
+      String guid = entity.getGuid();
+      Object[] values = index.values(entity);
+      afterCommit(() -> index.index(guid, values));
+    }
+  }
+
+  @PostRemove
+  public void remove(Model entity) {
+    SearchIndex index = SearchIndex.lookup(entity.getClass());
+    if (index != null) {
+      String guid = entity.getGuid();
+      afterCommit(() -> index.remove(guid));
+    }
+  }
+
+  /**
+   * Run a change of the index after the commit of the running transaction, or now if there's none
+   */
+  @SuppressWarnings("unchecked")
+  private static void afterCommit(Runnable change) {
+    TransactionSynchronizationRegistry registry = lookupRegistry();
+    if (registry == null || registry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+      change.run();
+      return;
+    }
+    List<Runnable> changes = (List<Runnable>) registry.getResource(CHANGES);
+    if (changes == null) {
+      List<Runnable> registered = new ArrayList<>();
+      registry.putResource(CHANGES, registered);
+      registry.registerInterposedSynchronization(new Synchronization() {
+
+        @Override
+        public void beforeCompletion() {}
+
+        @Override
+        public void afterCompletion(int status) {
+          if (status == Status.STATUS_COMMITTED) {
+            registered.forEach(Runnable::run);
+          }
+        }
+      });
+      changes = registered;
+    }
+    changes.add(change);
+  }
+
+  private static TransactionSynchronizationRegistry lookupRegistry() {
+    if (registry == null) {
+      try {
+        registry = InitialContext.doLookup(REGISTRY);
+      } catch (NamingException e) {
+        return null;
+      }
+    }
+    return registry;
+  }
+
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.sharding;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Picks the shard of a GUID on a consistent hash ring. Every shard owns
+ * <code>virtualNodes</code> points of the ring and a GUID belongs to the shard of the first point
+ * following its hash, so adding a shard moves only the GUIDs falling before its points.
+ * 
+ * @author Dorin Brage
+ */
+public class ShardRouter {
+
+  private final static Map<List<Integer>, ShardRouter> ROUTERS = new ConcurrentHashMap<>();
+
+  private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+  /**
+   * Returns the router of the given number of shards, creating it on the first call
+   */
+  public static ShardRouter of(int shards, int virtualNodes) {
+    List<Integer> key = new ArrayList<>();
+    key.add(shards);
+    key.add(virtualNodes);
+    return ROUTERS.computeIfAbsent(key, k -> new ShardRouter(shards, virtualNodes));
+  }
+
+  private ShardRouter(int shards, int virtualNodes) {
+    for (int shard = 0; shard < shards; shard++) {
+      for (int node = 0; node < virtualNodes; node++) {
+        ring.put(hash("shard-" + shard + "#" + node), shard);
+      }
+    }
+  }
+
+  /**
+   * @param guid the GUID
+   * @return the number of its shard
+   */
+  public int shardOf(String guid) {
+    Map.Entry<Long, Integer> point = ring.ceilingEntry(hash(guid));
+    return (point == null ? ring.firstEntry() : point).getValue();
+  }
+
+  /**
+   * Merge the pages read from every shard, each ordered by the key, into the first
+   * <code>max</code> results
+   *
+   * @param pages the pages of the shards
+   * @param key the key the pages are ordered by
+   * @param max the size of the merged page
+   * @return the merged page
+   */
+  public static <E, K extends Comparable<K>> List<E> mergeByKey(List<List<E>> pages,
+      Function<E, K> key, int max) {
+    PriorityQueue<int[]> heads = new PriorityQueue<>(
+        Comparator.comparing(head -> key.apply(pages.get(head[0]).get(head[1]))));
+    for (int shard = 0; shard < pages.size(); shard++) {
+      if (!pages.get(shard).isEmpty()) {
+        heads.add(new int[] {shard, 0});
+      }
+    }
+    List<E> merged = new ArrayList<>(max);
+    while (merged.size() < max && !heads.isEmpty()) {
+      int[] head = heads.poll();
+      List<E> page = pages.get(head[0]);
+      merged.add(page.get(head[1]));
+      if (++head[1] < page.size()) {
+        heads.add(head);
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * The 64-bit FNV-1a hash, mixed for spreading the close inputs
+   */
+  private static long hash(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b;
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+}
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.update;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.persistence.PersistenceException;
+import javax.persistence.Version;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.metadata.EntityMetadata;
+
+/**
+ * Compares the persistent attributes of two instances of an entity and copies the changed ones.
+ * The attributes of {@link Model} and the {@link Version} are left to the persistence context.
+ * The attributes are read and written through their getters and setters, if any, so the
+ * persistence provider tracks the changes.
+ * 
+ * @author Dorin Brage
+ * @param <ENTITY> the ENTITY
+ */
+public class EntityDiff<ENTITY extends Model> {
+
+  private final static Map<Class<?>, EntityDiff<?>> DIFFS = new ConcurrentHashMap<>();
+
+  private final Class<ENTITY> entityClass;
+  private final Constructor<ENTITY> constructor;
+  private final Map<String, Accessor> attributes = new LinkedHashMap<>();
+  private final Map<String, Accessor> modelAttributes = new LinkedHashMap<>();
+
+  /**
+   * Returns the diff of the entity, creating it on the first call
+   */
+  @SuppressWarnings("unchecked")
+  public static <ENTITY extends Model> EntityDiff<ENTITY> forEntity(
+      EntityMetadata<ENTITY> metadata) {
+    return (EntityDiff<ENTITY>) DIFFS.computeIfAbsent(metadata.getEntityClass(),
+        key -> new EntityDiff<>(metadata));
+  }
+
+  private EntityDiff(EntityMetadata<ENTITY> metadata) {
+    this.entityClass = metadata.getEntityClass();
+    try {
+      this.constructor = entityClass.getDeclaredConstructor();
+      constructor.setAccessible(true);
+    } catch (NoSuchMethodException e) {
+      throw new PersistenceException(
+          entityClass.getName() + " has no constructor without arguments", e);
+    }
+    Map<String, PropertyDescriptor> properties = new HashMap<>();
+    try {
+      for (PropertyDescriptor property : Introspector.getBeanInfo(entityClass)
+          .getPropertyDescriptors()) {
+        properties.put(property.getName(), property);
+      }
+    } catch (IntrospectionException e) {
+      throw new PersistenceException(e);
+    }
+    for (String attribute : metadata.getAttributes()) {
+      Field field = findField(attribute);
+      if (field == null || field.isAnnotationPresent(Version.class)) {
+        continue;
+      }
+      Accessor accessor = new Accessor(properties.get(attribute), field);
+      if (field.getDeclaringClass() == Model.class) {
+        modelAttributes.put(attribute, accessor);
+      } else {
+        attributes.put(attribute, accessor);
+      }
+    }
+  }
+
+  /**
+   * Copy the state of an entity into a new detached instance, the collections are copied so the
+   * changes of the copy don't reach the original. Copying reads every attribute, so the lazy
+   * collections of a managed entity are loaded, one query each.
+   *
+   * @param entity the entity
+   * @return the copy
+   */
+  public ENTITY copy(ENTITY entity) {
+    ENTITY copy;
+    try {
+      copy = constructor.newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new PersistenceException(e);
+    }
+    modelAttributes.values().forEach(accessor -> accessor.set(copy, accessor.get(entity)));
+    attributes.values().forEach(accessor -> accessor.set(copy, copyOf(accessor.get(entity))));
+    return copy;
+  }
+
+  /**
+   * Copy the attributes of an entity onto another one, except the ones of {@link Model}
+   *
+   * @param from the entity read
+   * @param to the entity written
+   */
+  public void replace(ENTITY from, ENTITY to) {
+    attributes.values().forEach(accessor -> accessor.set(to, copyOf(accessor.get(from))));
+  }
+
+  /**
+   * @param current the current state
+   * @param incoming the wanted state
+   * @return the names of the attributes which differ
+   */
+  public List<String> diff(ENTITY current, ENTITY incoming) {
+    List<String> changed = new ArrayList<>();
+    attributes.forEach((name, accessor) -> {
+      if (!same(accessor.get(current), accessor.get(incoming))) {
+        changed.add(name);
+      }
+    });
+    return changed;
+  }
+
+  /**
+   * Copy the changed attributes onto the managed entity, the managed collections are kept and
+   * their elements replaced
+   *
+   * @param changed the names of the changed attributes
+   * @param incoming the wanted state
+   * @param managed the managed entity
+   */
+  @SuppressWarnings("unchecked")
+  public void apply(List<String> changed, ENTITY incoming, ENTITY managed) {
+    for (String name : changed) {
+      Accessor accessor = attributes.get(name);
+      Object current = accessor.get(managed);
+      Object value = accessor.get(incoming);
+      if (current instanceof Collection && value instanceof Collection) {
+        ((Collection<Object>) current).clear();
+        ((Collection<Object>) current).addAll((Collection<Object>) value);
+      } else if (current instanceof Map && value instanceof Map) {
+        ((Map<Object, Object>) current).clear();
+        ((Map<Object, Object>) current).putAll((Map<Object, Object>) value);
+      } else {
+        accessor.set(managed, value);
+      }
+    }
+  }
+
+  /**
+   * The values are compared by equals, except the dates by their time, as the provider may load
+   * a {@link java.sql.Timestamp}, the decimals regardless of their scale and the collections by
+   * their elements, as the collections of the provider may not compare their contents (e.g. a
+   * bag equals only itself)
+   */
+  private static boolean same(Object current, Object incoming) {
+    if (current instanceof Date && incoming instanceof Date) {
+      return ((Date) current).getTime() == ((Date) incoming).getTime();
+    }
+    if (current instanceof BigDecimal && incoming instanceof BigDecimal) {
+      return ((BigDecimal) current).compareTo((BigDecimal) incoming) == 0;
+    }
+    if (current instanceof Set && incoming instanceof Set) {
+      return new HashSet<>((Set<?>) current).equals(new HashSet<>((Set<?>) incoming));
+    }
+    if (current instanceof Collection && incoming instanceof Collection) {
+      return new ArrayList<>((Collection<?>) current)
+          .equals(new ArrayList<>((Collection<?>) incoming));
+    }
+    if (current instanceof Map && incoming instanceof Map) {
+      return new HashMap<>((Map<?, ?>) current).equals(new HashMap<>((Map<?, ?>) incoming));
+    }
+    return Objects.deepEquals(current, incoming);
+  }
+
+  private static Object copyOf(Object value) {
+    if (value instanceof List) {
+      return new ArrayList<>((List<?>) value);
+    }
+    if (value instanceof Set) {
+      return new LinkedHashSet<>((Set<?>) value);
+    }
+    if (value instanceof Map) {
+      return new LinkedHashMap<>((Map<?, ?>) value);
+    }
+    return value;
+  }
+
+  private Field findField(String name) {
+    for (Class<?> type = entityClass; type != Object.class; type = type.getSuperclass()) {
+      try {
+        return type.getDeclaredField(name);
+      } catch (NoSuchFieldException e) {
+        // declared by a superclass
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the names of the compared attributes
+   */
+  public List<String> getAttributes() {
+    return Collections.unmodifiableList(new ArrayList<>(attributes.keySet()));
+  }
+
+  private static class Accessor {
+
+    private final PropertyDescriptor property;
+    private final Field field;
+
+    Accessor(PropertyDescriptor property, Field field) {
+      this.property = property;
+      this.field = field;
+      if (property == null || property.getReadMethod() == null
+          || property.getWriteMethod() == null) {
+        field.setAccessible(true);
+      }
+    }
+
+    Object get(Object entity) {
+      try {
+        if (property != null && property.getReadMethod() != null) {
+          return property.getReadMethod().invoke(entity);
+        }
+        return field.get(entity);
+      } catch (ReflectiveOperationException e) {
+        throw new PersistenceException(e);
+      }
+    }
+
+    void set(Object entity, Object value) {
+      try {
+        if (property != null && property.getWriteMethod() != null) {
+          property.getWriteMethod().invoke(entity, value);
+        } else {
+          field.set(entity, value);
+        }
+      } catch (ReflectiveOperationException e) {
+        throw new PersistenceException(e);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.update;
+
+import java.util.List;
+import ro.brage.dodo.jpa.Model;
+
+/**
+ * The result of an update, the entity and the names of its changed attributes
+ * 
+ * @author Dorin Brage
+ * @param <ENTITY> the ENTITY
+ */
+public class UpdateResult<ENTITY extends Model> {
+
+  private final ENTITY entity;
+  private final List<String> changedFields;
+
+  public UpdateResult(ENTITY entity, List<String> changedFields) {
+    this.entity = entity;
+    this.changedFields = changedFields;
+  }
+
+  public ENTITY getEntity() {
+    return entity;
+  }
+
+  public List<String> getChangedFields() {
+    return changedFields;
+  }
+
+  /**
+   * @return FALSE if the update was a no-op and nothing was written
+   */
+  public boolean isChanged() {
+    return !changedFields.isEmpty();
+  }
+
+}
@@ -18,19 +18,129 @@
  *******************************************************************************/
 package ro.brage.dodo.jpa.utils;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 
 /**
  * The JPA Log provides method/s for logging with the possibility to return a new instantiated
  * Object/List if required.
+ * <hr>
+ * The errors are rate-limited, the first error of a key is logged and the following ones are
+ * only counted until the interval elapses. They're then logged as one line with their count,
+ * along with the next error of the key or by the flusher started by {@link #schedule}.
  * 
  * @author Dorin Brage
  */
 public class JpaLog {
 
+  private final static Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+  /** the period, in milliseconds, of the flusher looking for the elapsed intervals */
+  private final static long FLUSH_PERIOD = 1000;
+
+  private final static AtomicBoolean SCHEDULED = new AtomicBoolean();
+
+  private static volatile long interval = 10000;
+
   public static Object error(Logger log, Enum<?> key, Exception e, Object type) {
-    log.error("Error happened {}:{}", key, e.getMessage());
+    COUNTERS.computeIfAbsent(log.getName() + ":" + key, name -> new Counter(log, key))
+        .error(e.getMessage());
     return type;
   }
 
+  /**
+   * Log the errors counted so far
+   */
+  public static void flush() {
+    COUNTERS.values().forEach(counter -> counter.expire(System.currentTimeMillis(), 0));
+  }
+
+  /**
+   * Log the errors counted in the intervals which elapsed, it's run by the flusher
+   */
+  public static void flushElapsed() {
+    COUNTERS.values().forEach(counter -> counter.expire(System.currentTimeMillis(), interval));
+  }
+
+  /**
+   * Start the flusher on an executor, only the first call starts it
+   *
+   * @param executor the executor
+   */
+  public static void schedule(ScheduledExecutorService executor) {
+    if (SCHEDULED.compareAndSet(false, true)) {
+      executor.scheduleWithFixedDelay(JpaLog::flushElapsed, FLUSH_PERIOD, FLUSH_PERIOD,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * @param interval the interval in milliseconds between two lines of the same key
+   */
+  public static void setInterval(long interval) {
+    JpaLog.interval = interval;
+  }
+
+  private static class Counter {
+
+    private final Logger log;
+    private final Enum<?> key;
+
+    private long since;
+    private int count;
+    private String lastMessage;
+
+    private Counter(Logger log, Enum<?> key) {
+      this.log = log;
+      this.key = key;
+      this.since = -interval;
+    }
+
+    private void error(String message) {
+      long now = System.currentTimeMillis();
+      synchronized (this) {
+        if (now - since < interval) {
+          count++;
+          lastMessage = message;
+          return;
+        }
+      }
+      summarize(now);
+      log.error("Error happened {}:{}", key, message);
+    }
+
+    /**
+     * Summarize the counted errors if their interval elapsed, nothing is reset if there's none
+     */
+    private void expire(long now, long elapsed) {
+      synchronized (this) {
+        if (count == 0 || now - since < elapsed) {
+          return;
+        }
+      }
+      summarize(now);
+    }
+
+    private void summarize(long now) {
+      int summarized;
+      String message;
+      long elapsed;
+      synchronized (this) {
+        summarized = count;
+        message = lastMessage;
+        elapsed = now - since;
+        since = now;
+        count = 0;
+      }
+      if (summarized > 0) {
+        log.error("Error happened {}:{} ({} times in {} ms)", key, message, summarized, elapsed);
+      }
+    }
+
+  }
+
 }
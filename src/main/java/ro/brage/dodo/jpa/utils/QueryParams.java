@@ -76,4 +76,14 @@ public class QueryParams {
   public Map<String, Object> getParams() {
     return data;
   }
+
+  @Override
+  public int hashCode() {
+    return data.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof QueryParams && data.equals(((QueryParams) obj).data);
+  }
 }
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.writebehind;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.brage.dodo.jpa.utils.Serializer;
+
+/**
+ * The write-ahead journal of a {@link WriteBehindBuffer}. Every accepted entity is appended to the
+ * current segment before being acknowledged, the segment is rotated when the buffer is drained and
+ * deleted once its entities are committed. Segments left behind by an abrupt stop are replayed on
+ * the next start.
+ * 
+ * <pre>
+ * segment := record*
+ * record  := length:int serialized-object:byte[length]
+ * </pre>
+ * 
+ * @author Dorin Brage
+ */
+class WriteAheadJournal {
+
+  private final Logger LOG = LoggerFactory.getLogger(WriteAheadJournal.class);
+
+  private final static String SEGMENT_SUFFIX = ".wal";
+
+  private final Path directory;
+  private final String name;
+  private final boolean sync;
+
+  private long sequence;
+  private Path segment;
+  private FileOutputStream file;
+  private DataOutputStream out;
+
+  WriteAheadJournal(Path directory, String name, boolean sync) throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.name = name;
+    this.sync = sync;
+    this.sequence = System.currentTimeMillis();
+  }
+
+  /**
+   * Returns the segments left behind by a previous run, oldest first
+   */
+  List<Path> findSegments() throws IOException {
+    List<Path> segments = new ArrayList<>();
+    try (DirectoryStream<Path> stream =
+        Files.newDirectoryStream(directory, name + "-*" + SEGMENT_SUFFIX)) {
+      stream.forEach(segments::add);
+    }
+    segments.sort(null);
+    return segments;
+  }
+
+  /**
+   * Reads all records of a segment. A truncated trailing record, written while the process was
+   * stopped, is ignored.
+   */
+  List<Object> read(Path segment) throws IOException, ClassNotFoundException {
+    List<Object> records = new ArrayList<>();
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+      while (true) {
+        byte[] record;
+        try {
+          record = new byte[in.readInt()];
+          in.readFully(record);
+        } catch (EOFException e) {
+          break;
+        }
+        records.add(Serializer.deserialize(record));
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Appends a record to the current segment
+   */
+  void append(Serializable record) throws IOException {
+    if (out == null) {
+      open();
+    }
+    byte[] bytes = Serializer.serialize(record);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+    out.flush();
+    if (sync) {
+      file.getFD().sync();
+    }
+  }
+
+  /**
+   * Closes the current segment, the next append opens a new one
+   *
+   * @return the closed segment or null if nothing was appended
+   */
+  Path rotate() throws IOException {
+    Path closed = segment;
+    if (out != null) {
+      out.close();
+    }
+    out = null;
+    file = null;
+    segment = null;
+    return closed;
+  }
+
+  void delete(Path segment) {
+    try {
+      Files.deleteIfExists(segment);
+    } catch (IOException e) {
+      LOG.warn("Couldn't delete the journal segment {}: {}", segment, e.getMessage());
+    }
+  }
+
+  private void open() throws IOException {
+    segment = directory.resolve(String.format("%s-%020d%s", name, sequence++, SEGMENT_SUFFIX));
+    file = new FileOutputStream(segment.toFile(), true);
+    out = new DataOutputStream(file);
+  }
+
+}
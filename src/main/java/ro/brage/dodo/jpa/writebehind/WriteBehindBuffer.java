@@ -0,0 +1,337 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.writebehind;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.annotations.WriteBehind;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.exceptions.EntityServiceException;
+import ro.brage.dodo.jpa.utils.JpaLog;
+
+/**
+ * The bounded buffer behind the {@link WriteBehind} mode. There is one buffer per entity, shared
+ * by all the pooled instances of its service.
+ * <ul>
+ * <li><b>enqueue</b> journals the entity and returns once it's durable, or fails with
+ * {@link JpaErrorKeys#WRITE_BUFFER_FULL} if no space is freed within the offer timeout</li>
+ * <li><b>flush</b> hands the buffered entities to the {@link WriteBehindSink} in batches, it's
+ * triggered when a batch is full or when the flush interval elapses</li>
+ * <li>a failed batch is kept and retried as a replay, as it may have been committed, the time
+ * between the attempts doubles up to {@link WriteBehind#maxBackoff()}</li>
+ * <li>after {@link WriteBehind#maxRetries()} its entities are persisted one by one and the ones
+ * still failing are moved to the dead-letter segment, so a poison entity can't block the buffer;
+ * if none succeeds, or the circuit of the service is open, the database is down and the batch is
+ * kept</li>
+ * <li>a journal segment is deleted only after every batch has been committed</li>
+ * </ul>
+ * 
+ * @author Dorin Brage
+ * @param <ENTITY> the ENTITY
+ */
+public class WriteBehindBuffer<ENTITY extends Model> {
+
+  private final static Logger LOG = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+  private final static Map<Class<?>, WriteBehindBuffer<?>> BUFFERS = new ConcurrentHashMap<>();
+
+  private final WriteBehind config;
+  private final WriteBehindSink<ENTITY> sink;
+  private final ScheduledExecutorService executor;
+  private final WriteAheadJournal journal;
+  private final WriteAheadJournal deadLetters;
+
+  private final Semaphore permits;
+  private final LinkedBlockingQueue<ENTITY> queue;
+  private final ReentrantLock appendLock = new ReentrantLock();
+  private final ReentrantLock flushLock = new ReentrantLock();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+  /** entities drained from the queue but not yet committed */
+  private final List<ENTITY> pending = new ArrayList<>();
+  private final List<Path> pendingSegments = new ArrayList<>();
+  /** TRUE if the pending entities were recovered from the journal, they hold no permit */
+  private boolean pendingRecovered;
+  /** the failed attempts of the first pending batch */
+  private int attempts;
+  /** the consecutive failed flushes, and the time before which the flusher doesn't retry */
+  private int failures;
+  private volatile long retryAt;
+
+  /**
+   * Returns the buffer of the entity, creating it on the first call
+   *
+   * @param entityClass the entity class
+   * @param config the write-behind configuration
+   * @param executor the executor running the flushes
+   * @param sink the sink persisting the batches
+   * @return the buffer
+   */
+  @SuppressWarnings("unchecked")
+  public static <ENTITY extends Model> WriteBehindBuffer<ENTITY> forEntity(
+      Class<ENTITY> entityClass, WriteBehind config, ScheduledExecutorService executor,
+      WriteBehindSink<ENTITY> sink) {
+    return (WriteBehindBuffer<ENTITY>) BUFFERS.computeIfAbsent(entityClass,
+        key -> new WriteBehindBuffer<>(entityClass, config, executor, sink));
+  }
+
+  WriteBehindBuffer(Class<ENTITY> entityClass, WriteBehind config,
+      ScheduledExecutorService executor, WriteBehindSink<ENTITY> sink) {
+    this.config = config;
+    this.sink = sink;
+    this.executor = executor;
+    this.permits = new Semaphore(config.capacity());
+    this.queue = new LinkedBlockingQueue<>(config.capacity());
+
+    Path directory = journalDirectory(config);
+    if (directory.toAbsolutePath().startsWith(
+        Paths.get(System.getProperty("java.io.tmpdir")).toAbsolutePath())) {
+      LOG.warn("The journal of {} is in {}, which may be cleared on reboot", entityClass.getName(),
+          directory);
+    }
+    try {
+      journal = new WriteAheadJournal(directory, entityClass.getName(), config.sync());
+      deadLetters = new WriteAheadJournal(directory, entityClass.getName() + ".dead", true);
+      recover();
+    } catch (IOException | ClassNotFoundException e) {
+      throw new EntityServiceException(JpaErrorKeys.FAILED_TO_JOURNAL_ENTITY,
+          "Couldn't open the journal of " + entityClass.getName(), e);
+    }
+
+    executor.scheduleWithFixedDelay(this::flushQuietly, config.flushInterval(),
+        config.flushInterval(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Journals and buffers the entity
+   *
+   * @param entity the entity, its GUID must be already assigned
+   * @return the entity
+   */
+  public ENTITY enqueue(ENTITY entity) {
+    try {
+      if (!permits.tryAcquire(config.offerTimeout(), TimeUnit.MILLISECONDS)) {
+        throw new EntityServiceException(JpaErrorKeys.WRITE_BUFFER_FULL,
+            "The write-behind buffer is full");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new EntityServiceException(JpaErrorKeys.WRITE_BUFFER_FULL,
+          "Interrupted while waiting for the write-behind buffer", e);
+    }
+
+    appendLock.lock();
+    try {
+      journal.append(entity);
+      queue.add(entity);
+    } catch (IOException e) {
+      permits.release();
+      throw new EntityServiceException(JpaErrorKeys.FAILED_TO_JOURNAL_ENTITY, e.getMessage(), e);
+    } finally {
+      appendLock.unlock();
+    }
+
+    if (queue.size() >= config.batchSize() && flushScheduled.compareAndSet(false, true)) {
+      executor.execute(() -> {
+        flushScheduled.set(false);
+        flushQuietly();
+      });
+    }
+    return entity;
+  }
+
+  /**
+   * Persists everything buffered so far, it's called by the flusher and on shutdown
+   *
+   * @return TRUE if the buffer was fully drained
+   */
+  public boolean flush() {
+    flushLock.lock();
+    try {
+      if (pending.isEmpty()) {
+        appendLock.lock();
+        try {
+          queue.drainTo(pending);
+          Path segment = journal.rotate();
+          if (segment != null) {
+            pendingSegments.add(segment);
+          }
+        } catch (IOException e) {
+          JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_JOURNAL_ENTITY, e, null);
+        } finally {
+          appendLock.unlock();
+        }
+      }
+
+      while (!pending.isEmpty()) {
+        List<ENTITY> batch = pending.subList(0, Math.min(config.batchSize(), pending.size()));
+        int size = batch.size();
+        boolean persisted = persist(batch);
+        if (persisted) {
+          batch.clear();
+          attempts = failures = 0;
+        }
+        if (!pendingRecovered) {
+          permits.release(size - batch.size());
+        }
+        if (!persisted) {
+          backOff();
+          return false;
+        }
+      }
+
+      pendingSegments.forEach(journal::delete);
+      pendingSegments.clear();
+      pendingRecovered = false;
+      return true;
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of entities not yet committed
+   */
+  public int size() {
+    return queue.size() + pending.size();
+  }
+
+  /**
+   * Persists a batch, once it failed {@link WriteBehind#maxRetries()} times its entities are
+   * persisted one by one and the failing ones are dead-lettered, unless none succeeds or the
+   * circuit opens. The committed entities are then removed from the batch and the others kept.
+   *
+   * @return FALSE if the batch should be retried
+   */
+  private boolean persist(List<ENTITY> batch) {
+    try {
+      sink.persist(new ArrayList<>(batch), pendingRecovered || attempts > 0 || failures > 0);
+      return true;
+    } catch (Exception e) {
+      JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_FLUSH_ENTITIES, e, null);
+      if (++attempts < config.maxRetries() || isOpen(e)) {
+        return false;
+      }
+    }
+    attempts = 0;
+
+    List<ENTITY> committed = new ArrayList<>();
+    Map<ENTITY, Exception> failed = new LinkedHashMap<>();
+    for (ENTITY entity : batch) {
+      try {
+        sink.persist(Collections.singletonList(entity), true);
+        committed.add(entity);
+      } catch (Exception e) {
+        if (isOpen(e)) {
+          break;
+        }
+        failed.put(entity, e);
+      }
+    }
+    batch.removeAll(committed);
+    if (committed.isEmpty() || !batch.stream().allMatch(failed::containsKey)) {
+      return false;
+    }
+
+    failed.forEach(this::deadLetter);
+    try {
+      deadLetters.rotate();
+    } catch (IOException e) {
+      JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_JOURNAL_ENTITY, e, null);
+    }
+    return true;
+  }
+
+  private void deadLetter(ENTITY entity, Exception cause) {
+    try {
+      deadLetters.append(entity);
+      JpaLog.error(LOG, JpaErrorKeys.DEAD_LETTERED_ENTITY, new EntityServiceException(
+          JpaErrorKeys.DEAD_LETTERED_ENTITY, entity.getGuid() + ": " + cause.getMessage(), cause),
+          null);
+    } catch (IOException e) {
+      JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_JOURNAL_ENTITY,
+          new EntityServiceException(JpaErrorKeys.FAILED_TO_JOURNAL_ENTITY, "Dropped the entity "
+              + entity.getGuid() + ", it couldn't be persisted nor dead-lettered: "
+              + e.getMessage(), e),
+          null);
+    }
+  }
+
+  private void backOff() {
+    long delay = config.flushInterval() << Math.min(failures++, 30);
+    retryAt = System.currentTimeMillis() + Math.min(config.maxBackoff(), delay);
+  }
+
+  private static boolean isOpen(Exception e) {
+    return e instanceof EntityServiceException
+        && ((EntityServiceException) e).getKey() == JpaErrorKeys.CIRCUIT_OPEN;
+  }
+
+  private static Path journalDirectory(WriteBehind config) {
+    if (!config.journal().isEmpty()) {
+      return Paths.get(config.journal());
+    }
+    String directory = System.getProperty("dodo.journal");
+    return directory != null ? Paths.get(directory)
+        : Paths.get(System.getProperty("user.home"), ".dodo", "journal");
+  }
+
+  private void flushQuietly() {
+    if (System.currentTimeMillis() < retryAt) {
+      return;
+    }
+    try {
+      flush();
+    } catch (Exception e) {
+      JpaLog.error(LOG, JpaErrorKeys.FAILED_TO_FLUSH_ENTITIES, e, null);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void recover() throws IOException, ClassNotFoundException {
+    for (Path segment : journal.findSegments()) {
+      for (Object record : journal.read(segment)) {
+        pending.add((ENTITY) record);
+      }
+      pendingSegments.add(segment);
+    }
+    if (!pending.isEmpty()) {
+      pendingRecovered = true;
+      LOG.info("Replaying {} journaled entities from {} segment/s", pending.size(),
+          pendingSegments.size());
+    }
+  }
+
+}
@@ -0,0 +1,551 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.processor;
+
+import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PRIVATE;
+import static javax.lang.model.element.Modifier.PUBLIC;
+import static javax.lang.model.element.Modifier.STATIC;
+import com.google.auto.service.AutoService;
+import com.squareup.javawriter.JavaWriter;
+import com.squareup.javawriter.StringLiteral;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import ro.brage.dodo.jpa.annotations.GenerateServices;
+
+/**
+ * Generates the metadata and the services of the entities annotated with
+ * {@link GenerateServices}, see the annotation for the generated classes
+ * 
+ * @author Dorin Brage
+ */
+@AutoService(Processor.class)
+@SupportedAnnotationTypes(ServicesProcessor.GENERATE_SERVICES)
+public class ServicesProcessor extends AbstractProcessor {
+
+  final static String GENERATE_SERVICES = "ro.brage.dodo.jpa.annotations.GenerateServices";
+
+  private final static String MODEL = "ro.brage.dodo.jpa.Model";
+  private final static String DTO_MODEL = "ro.brage.dodo.rs.DtoModel";
+  private final static String ADVANCED_MAPPER = "ro.brage.dodo.rs.mappers.AdvancedMapper";
+  private final static String ENTITY_SERVICE = "ro.brage.dodo.jpa.EntityService";
+  private final static String REST_API_SERVICE = "ro.brage.dodo.rs.RestApiService";
+  private final static String ENTITY_METADATA = "ro.brage.dodo.jpa.metadata.EntityMetadata";
+  private final static String METADATA_REGISTRY = "ro.brage.dodo.jpa.metadata.MetadataRegistry";
+  private final static String SERVICE_METADATA = "ro.brage.dodo.jpa.metadata.ServiceMetadata";
+  private final static String SEARCHABLE = "ro.brage.dodo.jpa.annotations.Searchable";
+  private final static String AGGREGATABLE = "ro.brage.dodo.jpa.annotations.Aggregatable";
+
+  private final static String ENTITY = "javax.persistence.Entity";
+  private final static String TRANSIENT = "javax.persistence.Transient";
+  private final static String NAMED_QUERY = "javax.persistence.NamedQuery";
+  private final static String NAMED_QUERIES = "javax.persistence.NamedQueries";
+  private final static String NAMED_ENTITY_GRAPH = "javax.persistence.NamedEntityGraph";
+  private final static String NAMED_ENTITY_GRAPHS = "javax.persistence.NamedEntityGraphs";
+
+  private final static String GENERATED = "javax.annotation.Generated";
+  private final static String STATELESS = "javax.ejb.Stateless";
+  private final static String PATH = "javax.ws.rs.Path";
+
+  /** the same test as <code>ReflectiveMetadata.getOrderedQueries()</code> */
+  private final static Pattern ORDER_BY =
+      Pattern.compile("\\border\\s+by\\b", Pattern.CASE_INSENSITIVE);
+
+  /** the constants of the generated metadata which the named constants can't take */
+  private final static List<String> RESERVED_CONSTANTS = Arrays.asList("INSTANCE",
+      "ENTITY_NAME", "NAMED_QUERIES", "ENTITY_GRAPHS", "ATTRIBUTES", "SEARCHABLE_FIELDS",
+      "AGGREGATABLE_ATTRIBUTES", "ORDERED_QUERIES");
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getElementsAnnotatedWith(GenerateServices.class)) {
+      if (element.getKind() != ElementKind.CLASS) {
+        error(element, "@GenerateServices is allowed only on entity classes");
+        continue;
+      }
+      try {
+        process((TypeElement) element);
+      } catch (IOException e) {
+        error(element, "Couldn't generate the services: " + e.getMessage());
+      }
+    }
+    return true;
+  }
+
+  private void process(TypeElement entity) throws IOException {
+    AnnotationMirror generate = findAnnotation(entity, GENERATE_SERVICES);
+    TypeMirror dto = getClassValue(generate, "dto");
+    TypeMirror mapper = getClassValue(generate, "mapper");
+    String path = (String) getValue(generate, "path");
+
+    boolean valid = validate(entity, dto, mapper);
+    String simpleName = entity.getSimpleName().toString();
+    List<String> queries = findNames(entity, NAMED_QUERY, NAMED_QUERIES);
+    List<String> graphs = findNames(entity, NAMED_ENTITY_GRAPH, NAMED_ENTITY_GRAPHS);
+
+    if (!queries.contains(simpleName + ".findAll")) {
+      error(entity, "Missing the named query " + simpleName + ".findAll required by getAll()");
+      valid = false;
+    }
+    for (String query : queries) {
+      if (!query.startsWith(simpleName + ".")) {
+        warning(entity, "The named query " + query + " isn't prefixed with " + simpleName
+            + ". and can't be run through getResults/getSingleResult");
+      }
+    }
+    if (!graphs.contains(simpleName + ".loadByGuid")) {
+      warning(entity, "Missing the named entity graph " + simpleName
+          + ".loadByGuid used by loadByGuid()");
+    }
+    if (!valid) {
+      return;
+    }
+
+    String packageName =
+        processingEnv.getElementUtils().getPackageOf(entity).getQualifiedName().toString();
+    String entityName = getEntityName(entity);
+
+    writeMetadata(entity, packageName, entityName, queries, graphs);
+    writeEntityService(entity, packageName);
+    if (dto != null) {
+      writeRestApiService(entity, packageName, dto, mapper,
+          path == null || path.isEmpty() ? "/" + simpleName.toLowerCase(Locale.ROOT) : path);
+    }
+  }
+
+  private boolean validate(TypeElement entity, TypeMirror dto, TypeMirror mapper) {
+    boolean valid = true;
+    if (!isSubtype(entity.asType(), MODEL)) {
+      error(entity, "@GenerateServices requires a subclass of " + MODEL);
+      valid = false;
+    }
+    if (findAnnotation(entity, ENTITY) == null) {
+      error(entity, "@GenerateServices requires an @Entity");
+      valid = false;
+    }
+    if (entity.getModifiers().contains(Modifier.ABSTRACT)) {
+      error(entity, "@GenerateServices isn't allowed on abstract classes");
+      valid = false;
+    }
+    if ((dto == null) != (mapper == null)) {
+      error(entity, "@GenerateServices requires both the dto and the mapper, or none of them");
+      valid = false;
+    }
+    if (dto != null && !isSubtype(dto, DTO_MODEL)) {
+      error(entity, dto + " isn't a subclass of " + DTO_MODEL);
+      valid = false;
+    }
+    if (mapper != null) {
+      TypeMirror expected = processingEnv.getTypeUtils().getDeclaredType(
+          processingEnv.getElementUtils().getTypeElement(ADVANCED_MAPPER), entity.asType(), dto);
+      if (!processingEnv.getTypeUtils().isAssignable(mapper, expected)) {
+        error(entity, mapper + " isn't an AdvancedMapper<" + entity.getSimpleName() + ", "
+            + processingEnv.getTypeUtils().asElement(dto).getSimpleName() + ">");
+        valid = false;
+      }
+    }
+    return valid;
+  }
+
+  private void writeMetadata(TypeElement entity, String packageName, String entityName,
+      List<String> queries, List<String> graphs) throws IOException {
+    String simpleName = entity.getSimpleName().toString();
+    String className = simpleName + "Metadata";
+    String entityType = entity.getQualifiedName().toString();
+    List<String> attributes = findAttributes(entity);
+    Map<String, Integer> searchableFields = findSearchableFields(entity);
+    List<String> aggregatableAttributes = findAnnotatedFields(entity, AGGREGATABLE);
+    List<String> orderedQueries = findOrderedQueries(entity);
+    Set<String> constants = new HashSet<>(RESERVED_CONSTANTS);
+
+    try (JavaWriter writer = createWriter(entity, packageName, className)) {
+      writer.emitPackage(packageName)
+          .emitImports("java.util.Arrays", "java.util.Collections", "java.util.LinkedHashMap",
+              "java.util.List", "java.util.Map", GENERATED, ENTITY_METADATA, METADATA_REGISTRY)
+          .emitEmptyLine()
+          .emitJavadoc("The metadata of {@link %s}", simpleName)
+          .emitAnnotation(GENERATED, literal(getClass().getName()))
+          .beginType(className, "class", EnumSet.of(PUBLIC, FINAL), null,
+              "EntityMetadata<" + entityType + ">")
+          .emitEmptyLine()
+          .emitField(className, "INSTANCE", EnumSet.of(PUBLIC, STATIC, FINAL),
+              "new " + className + "()")
+          .emitEmptyLine()
+          .emitField("String", "ENTITY_NAME", EnumSet.of(PUBLIC, STATIC, FINAL),
+              literal(entityName));
+
+      for (String query : queries) {
+        writer.emitField("String", constantName(entity, "QUERY_", query, constants),
+            EnumSet.of(PUBLIC, STATIC, FINAL), literal(query));
+      }
+      for (String graph : graphs) {
+        writer.emitField("String", constantName(entity, "GRAPH_", graph, constants),
+            EnumSet.of(PUBLIC, STATIC, FINAL), literal(graph));
+      }
+      for (String attribute : attributes) {
+        writer.emitField("String", constantName(entity, "ATTRIBUTE_", attribute, constants),
+            EnumSet.of(PUBLIC, STATIC, FINAL), literal(attribute));
+      }
+
+      writer.emitEmptyLine()
+          .emitField("List<String>", "NAMED_QUERIES", EnumSet.of(PRIVATE, STATIC, FINAL),
+              listOf(queries))
+          .emitField("List<String>", "ENTITY_GRAPHS", EnumSet.of(PRIVATE, STATIC, FINAL),
+              listOf(graphs))
+          .emitField("List<String>", "ATTRIBUTES", EnumSet.of(PRIVATE, STATIC, FINAL),
+              listOf(attributes))
+          .emitField("Map<String, Integer>", "SEARCHABLE_FIELDS",
+              EnumSet.of(PRIVATE, STATIC, FINAL),
+              searchableFields.isEmpty() ? "Collections.emptyMap()" : "searchableFields()")
+          .emitField("List<String>", "AGGREGATABLE_ATTRIBUTES",
+              EnumSet.of(PRIVATE, STATIC, FINAL), listOf(aggregatableAttributes))
+          .emitField("List<String>", "ORDERED_QUERIES", EnumSet.of(PRIVATE, STATIC, FINAL),
+              listOf(orderedQueries))
+          .emitEmptyLine()
+          .beginInitializer(true)
+          .emitStatement("MetadataRegistry.register(INSTANCE)")
+          .endInitializer()
+          .emitEmptyLine()
+          .beginConstructor(EnumSet.of(PRIVATE))
+          .endConstructor()
+          .emitEmptyLine();
+
+      emitGetter(writer, "Class<" + entityType + ">", "getEntityClass", entityType + ".class");
+      emitGetter(writer, "String", "getEntityName", "ENTITY_NAME");
+      emitGetter(writer, "String", "getLoadGraph",
+          literal(simpleName + ".loadByGuid"));
+      emitGetter(writer, "List<String>", "getNamedQueries", "NAMED_QUERIES");
+      emitGetter(writer, "List<String>", "getEntityGraphs", "ENTITY_GRAPHS");
+      emitGetter(writer, "List<String>", "getAttributes", "ATTRIBUTES");
+      emitGetter(writer, "Map<String, Integer>", "getSearchableFields", "SEARCHABLE_FIELDS");
+      emitGetter(writer, "List<String>", "getAggregatableAttributes", "AGGREGATABLE_ATTRIBUTES");
+      emitGetter(writer, "List<String>", "getOrderedQueries", "ORDERED_QUERIES");
+
+      writer.emitAnnotation(Override.class)
+          .beginMethod("String", "getQueryName", EnumSet.of(PUBLIC), "String", "name")
+          .emitStatement("return %s + name", literal(simpleName + "."))
+          .endMethod()
+          .emitEmptyLine();
+
+      if (!searchableFields.isEmpty()) {
+        writer.beginMethod("Map<String, Integer>", "searchableFields",
+            EnumSet.of(PRIVATE, STATIC))
+            .emitStatement("Map<String, Integer> fields = new LinkedHashMap<>()");
+        for (Map.Entry<String, Integer> field : searchableFields.entrySet()) {
+          writer.emitStatement("fields.put(%s, %d)", literal(field.getKey()), field.getValue());
+        }
+        writer.emitStatement("return Collections.unmodifiableMap(fields)")
+            .endMethod()
+            .emitEmptyLine();
+      }
+      writer.endType();
+    }
+  }
+
+  private void writeEntityService(TypeElement entity, String packageName) throws IOException {
+    String simpleName = entity.getSimpleName().toString();
+    String className = simpleName + "EntityService";
+    String entityType = entity.getQualifiedName().toString();
+
+    try (JavaWriter writer = createWriter(entity, packageName, className)) {
+      writer.emitPackage(packageName)
+          .emitImports(GENERATED, STATELESS, ENTITY_SERVICE, SERVICE_METADATA)
+          .emitEmptyLine()
+          .emitJavadoc("The service of {@link %s}", simpleName)
+          .emitAnnotation(GENERATED, literal(getClass().getName()))
+          .emitAnnotation(STATELESS)
+          .beginType(className, "class", EnumSet.of(PUBLIC), "EntityService<" + entityType + ">")
+          .emitEmptyLine()
+          .emitField("ServiceMetadata", "SERVICE", EnumSet.of(PRIVATE, STATIC, FINAL),
+              "ServiceMetadata.unannotated(" + entityType + ".class)")
+          .emitEmptyLine()
+          .beginConstructor(EnumSet.of(PUBLIC))
+          .emitStatement("super(%sMetadata.INSTANCE)", simpleName)
+          .endConstructor()
+          .emitEmptyLine()
+          .emitJavadoc("The subclasses can be annotated, their annotations are read")
+          .emitAnnotation(Override.class)
+          .beginMethod("ServiceMetadata", "getServiceMetadata", EnumSet.of(Modifier.PROTECTED))
+          .emitStatement("return getClass() == %s.class ? SERVICE : super.getServiceMetadata()",
+              className)
+          .endMethod()
+          .emitEmptyLine()
+          .endType();
+    }
+  }
+
+  private void writeRestApiService(TypeElement entity, String packageName, TypeMirror dto,
+      TypeMirror mapper, String path) throws IOException {
+    String simpleName = entity.getSimpleName().toString();
+    String className = simpleName + "RestApiService";
+
+    try (JavaWriter writer = createWriter(entity, packageName, className)) {
+      writer.emitPackage(packageName)
+          .emitImports(GENERATED, STATELESS, PATH, REST_API_SERVICE)
+          .emitEmptyLine()
+          .emitJavadoc("The rest service of {@link %s}", simpleName)
+          .emitAnnotation(GENERATED, literal(getClass().getName()))
+          .emitAnnotation(STATELESS)
+          .emitAnnotation(PATH, literal(path))
+          .beginType(className, "class", EnumSet.of(PUBLIC),
+              "RestApiService<" + entity.getQualifiedName() + ", " + dto + ", " + simpleName
+                  + "EntityService, " + mapper + ">")
+          .emitEmptyLine()
+          .endType();
+    }
+  }
+
+  private JavaWriter createWriter(TypeElement entity, String packageName, String className)
+      throws IOException {
+    String name = packageName.isEmpty() ? className : packageName + "." + className;
+    Writer writer = processingEnv.getFiler().createSourceFile(name, entity).openWriter();
+    JavaWriter javaWriter = new JavaWriter(writer);
+    javaWriter.setIndent("  ");
+    return javaWriter;
+  }
+
+  private void emitGetter(JavaWriter writer, String type, String name, String value)
+      throws IOException {
+    writer.emitAnnotation(Override.class)
+        .beginMethod(type, name, EnumSet.of(PUBLIC))
+        .emitStatement("return %s", value)
+        .endMethod()
+        .emitEmptyLine();
+  }
+
+  /**
+   * The persistent fields of the entity and of its mapped superclasses
+   */
+  private List<String> findAttributes(TypeElement entity) {
+    List<String> attributes = new ArrayList<>();
+    for (TypeElement type = entity; type != null; type = getSuperclass(type)) {
+      List<String> declared = new ArrayList<>();
+      for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+        Set<Modifier> modifiers = field.getModifiers();
+        if (!modifiers.contains(Modifier.STATIC) && !modifiers.contains(Modifier.TRANSIENT)
+            && findAnnotation(field, TRANSIENT) == null) {
+          declared.add(field.getSimpleName().toString());
+        }
+      }
+      attributes.addAll(0, declared);
+    }
+    return attributes;
+  }
+
+  /**
+   * The {@link ro.brage.dodo.jpa.annotations.Searchable} fields with their boost, in the order
+   * of <code>ReflectiveMetadata.getSearchableFields()</code>
+   */
+  private Map<String, Integer> findSearchableFields(TypeElement entity) {
+    Map<String, Integer> fields = new LinkedHashMap<>();
+    for (TypeElement type = entity; type != null; type = getSuperclass(type)) {
+      for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+        AnnotationMirror searchable = findAnnotation(field, SEARCHABLE);
+        if (searchable != null) {
+          fields.putIfAbsent(field.getSimpleName().toString(),
+              (Integer) getValue(searchable, "boost"));
+        }
+      }
+    }
+    return fields;
+  }
+
+  /**
+   * The fields of the entity and of its superclasses having the annotation
+   */
+  private List<String> findAnnotatedFields(TypeElement entity, String annotation) {
+    List<String> fields = new ArrayList<>();
+    for (TypeElement type = entity; type != null; type = getSuperclass(type)) {
+      for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+        if (findAnnotation(field, annotation) != null) {
+          fields.add(field.getSimpleName().toString());
+        }
+      }
+    }
+    return fields;
+  }
+
+  /**
+   * The full names of the named queries having an ORDER BY
+   */
+  private List<String> findOrderedQueries(TypeElement entity) {
+    List<String> names = new ArrayList<>();
+    for (AnnotationMirror query : findAnnotations(entity, NAMED_QUERY, NAMED_QUERIES)) {
+      if (ORDER_BY.matcher((String) getValue(query, "query")).find()) {
+        names.add((String) getValue(query, "name"));
+      }
+    }
+    return names;
+  }
+
+  private TypeElement getSuperclass(TypeElement type) {
+    TypeMirror superclass = type.getSuperclass();
+    if (superclass.getKind() != TypeKind.DECLARED) {
+      return null;
+    }
+    TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+    return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+  }
+
+  /**
+   * The names of the single and repeated annotations, e.g. NamedQuery and NamedQueries
+   */
+  private List<String> findNames(TypeElement entity, String single, String container) {
+    List<String> names = new ArrayList<>();
+    findAnnotations(entity, single, container)
+        .forEach(annotation -> names.add((String) getValue(annotation, "name")));
+    return names;
+  }
+
+  private List<AnnotationMirror> findAnnotations(TypeElement entity, String single,
+      String container) {
+    List<AnnotationMirror> found = new ArrayList<>();
+    AnnotationMirror annotation = findAnnotation(entity, single);
+    if (annotation != null) {
+      found.add(annotation);
+    }
+    AnnotationMirror annotations = findAnnotation(entity, container);
+    if (annotations != null) {
+      for (Object value : (List<?>) getValue(annotations, "value")) {
+        found.add((AnnotationMirror) ((AnnotationValue) value).getValue());
+      }
+    }
+    return found;
+  }
+
+  private String getEntityName(TypeElement entity) {
+    String name = (String) getValue(findAnnotation(entity, ENTITY), "name");
+    return name == null || name.isEmpty() ? entity.getSimpleName().toString() : name;
+  }
+
+  private AnnotationMirror findAnnotation(Element element, String type) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName()
+          .contentEquals(type)) {
+        return annotation;
+      }
+    }
+    return null;
+  }
+
+  private Object getValue(AnnotationMirror annotation, String name) {
+    Map<String, Object> values = new LinkedHashMap<>();
+    processingEnv.getElementUtils().getElementValuesWithDefaults(annotation)
+        .forEach((key, value) -> values.put(key.getSimpleName().toString(), value.getValue()));
+    return values.get(name);
+  }
+
+  private TypeMirror getClassValue(AnnotationMirror annotation, String name) {
+    TypeMirror type = (TypeMirror) getValue(annotation, name);
+    return type.getKind() == TypeKind.VOID ? null : type;
+  }
+
+  private boolean isSubtype(TypeMirror type, String superType) {
+    TypeElement element = processingEnv.getElementUtils().getTypeElement(superType);
+    return element != null && processingEnv.getTypeUtils().isSubtype(
+        processingEnv.getTypeUtils().erasure(type),
+        processingEnv.getTypeUtils().erasure(element.asType()));
+  }
+
+  /**
+   * Car.findByMake becomes QUERY_FIND_BY_MAKE, a name already taken gets a suffix, e.g.
+   * Car.find_by_make becomes QUERY_FIND_BY_MAKE_2
+   */
+  private String constantName(TypeElement entity, String prefix, String name,
+      Set<String> constants) {
+    String constant = constantName(prefix, name, entity.getSimpleName().toString());
+    String unique = constant;
+    for (int suffix = 2; !constants.add(unique); suffix++) {
+      unique = constant + "_" + suffix;
+    }
+    if (!unique.equals(constant)) {
+      warning(entity, "The constant of " + name + " is named " + unique + ", " + constant
+          + " is already taken");
+    }
+    return unique;
+  }
+
+  private static String constantName(String prefix, String name, String simpleName) {
+    String shortName = name.startsWith(simpleName + ".") ? name.substring(simpleName.length() + 1)
+        : name;
+    StringBuilder constant = new StringBuilder(prefix);
+    for (int i = 0; i < shortName.length(); i++) {
+      char c = shortName.charAt(i);
+      if (Character.isUpperCase(c) && i > 0 && Character.isLowerCase(shortName.charAt(i - 1))) {
+        constant.append('_');
+      }
+      constant.append(Character.isLetterOrDigit(c) ? Character.toUpperCase(c) : '_');
+    }
+    return constant.toString();
+  }
+
+  private static String literal(String value) {
+    return StringLiteral.forValue(value).literal();
+  }
+
+  private static String listOf(List<String> values) {
+    if (values.isEmpty()) {
+      return "Collections.emptyList()";
+    }
+    List<String> literals = new ArrayList<>(values.size());
+    values.forEach(value -> literals.add(literal(value)));
+    return "Collections.unmodifiableList(Arrays.asList(" + String.join(", ", literals) + "))";
+  }
+
+  private void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+  }
+
+  private void warning(Element element, String message) {
+    processingEnv.getMessager().printMessage(Kind.WARNING, message, element);
+  }
+
+}
@@ -19,14 +19,21 @@
 package ro.brage.dodo.rs;
 
 import java.util.List;
+import ro.brage.dodo.jpa.aggregation.AggregateRow;
+import ro.brage.dodo.jpa.enums.AggregateFunction;
+import ro.brage.dodo.jpa.enums.TimeBucket;
+import ro.brage.dodo.rs.batch.BatchOperation;
+import ro.brage.dodo.rs.batch.BatchResult;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.SecurityContext;
@@ -64,4 +71,23 @@ public interface RestApi<DTO extends DtoModel> {
   @Path("/load/{guid}")
   public DTO loadByGuid(@PathParam("guid") String guid, @Context SecurityContext sc);
 
+  @GET
+  @Path("/search")
+  public List<DTO> search(@QueryParam("q") String text,
+      @QueryParam("max") @DefaultValue("20") int maxResults, @Context SecurityContext sc);
+
+  @GET
+  @Path("/aggregate")
+  public List<AggregateRow> aggregate(
+      @QueryParam("function") @DefaultValue("COUNT") AggregateFunction function,
+      @QueryParam("of") String attribute, @QueryParam("groupBy") List<String> groupBy,
+      @QueryParam("bucket") TimeBucket bucket,
+      @QueryParam("on") @DefaultValue("createdOn") String bucketAttribute,
+      @QueryParam("from") Long from, @QueryParam("to") Long to, @Context SecurityContext sc);
+
+  @POST
+  @Path("/batch")
+  public List<BatchResult<DTO>> batch(List<BatchOperation<DTO>> operations,
+      @Context SecurityContext sc);
+
 }
@@ -18,15 +18,43 @@
  *******************************************************************************/
 package ro.brage.dodo.rs;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.SecurityContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ro.brage.dodo.jpa.EntityService;
 import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.aggregation.AggregateRow;
+import ro.brage.dodo.jpa.aggregation.Aggregation;
+import ro.brage.dodo.jpa.enums.AggregateFunction;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.enums.TimeBucket;
+import ro.brage.dodo.jpa.exceptions.EntityServiceException;
+import ro.brage.dodo.jpa.limits.Deadline;
+import ro.brage.dodo.jpa.limits.ResultList;
+import ro.brage.dodo.jpa.routing.ReadWriteRouter;
+import ro.brage.dodo.jpa.update.UpdateResult;
+import ro.brage.dodo.rs.annotations.CoalesceReads;
+import ro.brage.dodo.rs.batch.BatchOperation;
+import ro.brage.dodo.rs.batch.BatchResult;
+import ro.brage.dodo.rs.annotations.OperationTimeout;
 import ro.brage.dodo.rs.mappers.AdvancedMapper;
+import ro.brage.dodo.rs.providers.AcceptedResponseFilter;
+import ro.brage.dodo.rs.providers.ChangedFieldsResponseFilter;
+import ro.brage.dodo.rs.providers.EntityServiceExceptionMapper;
+import ro.brage.dodo.rs.providers.TruncatedResponseFilter;
+import ro.brage.dodo.rs.utils.SingleFlight;
 
 /**
  * The abstract rest service bean class
@@ -43,45 +71,263 @@ public abstract class RestApiService<ENTITY extends Model, DTO extends DtoModel,
 
   private Logger LOG = LoggerFactory.getLogger(RestApiService.class);
 
+  protected final static int MAX_BATCH_OPERATIONS = 1000;
+
   @Inject
   private SERVICE service;
 
   @Inject
   private MAPPER mapper;
 
+  @Context
+  private HttpServletRequest request;
+
+  private boolean coalesceReads;
+
+  private long operationTimeout;
+
+  @PostConstruct
+  protected void initializeRestApi() {
+    coalesceReads = getClass().isAnnotationPresent(CoalesceReads.class);
+    OperationTimeout timeout = getClass().getAnnotation(OperationTimeout.class);
+    operationTimeout = timeout == null ? 0 : timeout.value();
+  }
+
   @Override
-  public List<DTO> getAll(@Context SecurityContext sc) {
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public List<DTO> getAll(SecurityContext sc) {
     LOG.info("calling getAll()");
-    List<ENTITY> data = service.getAll();
-    return mapper.findDTOs(data);
+    return readWithinTimeout(() -> {
+      List<ENTITY> data = service.getAll();
+      if (ResultList.isTruncated(data)) {
+        TruncatedResponseFilter.truncate(request);
+      }
+      return mapper.findDTOs(data);
+    });
+  }
+
+  @Override
+  public DTO create(DTO entity, SecurityContext sc) {
+    return withinTimeout(() -> {
+      ENTITY data = service.create(mapper.map(entity));
+      if (service.isWriteBehind()) {
+        AcceptedResponseFilter.accept(request);
+        return mapper.map(data);
+      }
+      return mapper.load(data);
+    });
+  }
+
+  @Override
+  public DTO updateByGuid(String guid, DTO entity, SecurityContext sc) {
+    return withinTimeout(() -> {
+      UpdateResult<ENTITY> result =
+          service.updateChanged(guid, target -> mapper.updateEntity(entity, target));
+      if (result == null) {
+        return null;
+      }
+      ChangedFieldsResponseFilter.changed(request, result.getChangedFields());
+      return mapper.load(result.getEntity());
+    });
+  }
+
+  @Override
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public DTO getByGuid(String guid, SecurityContext sc) {
+    return readWithinTimeout(
+        () -> coalesce("getByGuid", guid, () -> mapper.map(service.findByGuid(guid))));
   }
 
   @Override
-  public DTO create(DTO entity, @Context SecurityContext sc) {
-    ENTITY data = mapper.map(entity);
-    return mapper.load(service.create(data));
+  public boolean deleteByGuid(String guid, SecurityContext sc) {
+    return withinTimeout(() -> service.deleteByGuid(guid));
   }
 
   @Override
-  public DTO updateByGuid(String guid, DTO entity, @Context SecurityContext sc) {
-    ENTITY data = service.updateByGuid(guid, mapper.map(entity));
-    return mapper.load(service.create(data));
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public DTO loadByGuid(String guid, SecurityContext sc) {
+    return readWithinTimeout(
+        () -> coalesce("loadByGuid", guid, () -> mapper.load(service.loadByGuid(guid))));
   }
 
   @Override
-  public DTO getByGuid(String guid, @Context SecurityContext sc) {
-    ENTITY data = service.findByGuid(guid);
-    return mapper.map(data);
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public List<DTO> search(String text, int maxResults, SecurityContext sc) {
+    return readWithinTimeout(() -> mapper.findDTOs(service.search(text, maxResults)));
   }
 
   @Override
-  public boolean deleteByGuid(String guid, @Context SecurityContext sc) {
-    return service.deleteByGuid(guid);
+  @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+  public List<AggregateRow> aggregate(AggregateFunction function, String attribute,
+      List<String> groupBy, TimeBucket bucket, String bucketAttribute, Long from, Long to,
+      SecurityContext sc) {
+    Aggregation aggregation = new Aggregation(function).of(attribute)
+        .groupBy(groupBy.toArray(new String[groupBy.size()]))
+        .bucket(bucket, bucketAttribute)
+        .between(from == null ? null : new Date(from), to == null ? null : new Date(to));
+    return readWithinTimeout(() -> service.aggregate(aggregation));
   }
 
+  /**
+   * Run the operations in order within one transaction. If an operation fails the transaction is
+   * rolled back and the remaining operations aren't run.
+   */
   @Override
-  public DTO loadByGuid(String guid, @Context SecurityContext sc) {
-    return mapper.load(service.loadByGuid(guid));
+  public List<BatchResult<DTO>> batch(List<BatchOperation<DTO>> operations,
+      SecurityContext sc) {
+    if (operations == null || operations.isEmpty()
+        || operations.size() > MAX_BATCH_OPERATIONS) {
+      throw new EntityServiceException(JpaErrorKeys.INVALID_BATCH,
+          "A batch has 1 to " + MAX_BATCH_OPERATIONS + " operations");
+    }
+    List<BatchResult<DTO>> results = new ArrayList<>(operations.size());
+    for (int i = 0; i < operations.size(); i++) {
+      results.add(new BatchResult<>(i, operations.get(i).getType()));
+    }
+    return withinTimeout(() -> service.inTransaction(() -> runBatch(operations, results)));
+  }
+
+  /**
+   * Run an operation within the {@link OperationTimeout} of the resource, if any. The queries of
+   * the operation get the remaining time as their timeout, the queries started after the deadline
+   * fail without running.
+   *
+   * @param operation the operation returning the mapped result
+   * @return the result
+   */
+  protected <T> T withinTimeout(Supplier<T> operation) {
+    if (operationTimeout <= 0) {
+      return operation.get();
+    }
+    return Deadline.run(operationTimeout, operation);
+  }
+
+  /**
+   * Run a read within the {@link OperationTimeout} of the resource, like
+   * {@link #withinTimeout(Supplier)}. The deadline is checked once more after the mapping, so the
+   * whole read is bounded.
+   *
+   * @param read the read returning the mapped result
+   * @return the result
+   */
+  protected <T> T readWithinTimeout(Supplier<T> read) {
+    return withinTimeout(() -> {
+      T result = read.get();
+      Deadline.check();
+      return result;
+    });
+  }
+
+  /**
+   * Run a read, coalesced with the identical reads already running if the resource is annotated
+   * with {@link CoalesceReads}. A caller pinned to the primary after a write reads on its own, as
+   * the running read may be on the replica.
+   * 
+   * <pre>
+   * QueryParams params = new QueryParams().addParameter(Car_.make, make);
+   * return coalesce("findByMake", params,
+   *     () -&gt; getMapper().findDTOs(getService().getResults("findByMake", params)));
+   * </pre>
+   *
+   * @param operation the name of the operation, e.g. the named query
+   * @param key the GUID or the QueryParams of the operation
+   * @param read the read returning the mapped result
+   * @return the result, a private copy for the coalesced callers
+   */
+  protected <T> T coalesce(String operation, Object key, Supplier<T> read) {
+    if (!coalesceReads || ReadWriteRouter.isPinned()) {
+      return read.get();
+    }
+    return SingleFlight.execute(Arrays.asList(service.getEntityClass(), operation, key), read);
+  }
+
+  private List<BatchResult<DTO>> runBatch(List<BatchOperation<DTO>> operations,
+      List<BatchResult<DTO>> results) {
+    for (int i = 0; i < operations.size(); i++) {
+      BatchResult<DTO> result = results.get(i);
+      try {
+        runOperation(operations.get(i), result, results);
+        continue;
+      } catch (EntityServiceException e) {
+        result.setStatus(EntityServiceExceptionMapper.getStatus(e.getKey()).getStatusCode());
+        result.setError(e.getKey().name());
+      } catch (Exception e) {
+        LOG.error("Batch operation {} failed {}", i, e.getMessage());
+        result.setStatus(Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        result.setError(JpaErrorKeys.FAILED_BATCH_OPERATION.name());
+      }
+
+      service.setRollbackOnly();
+      for (BatchResult<DTO> rolledBack : results.subList(0, i)) {
+        rolledBack.setStatus(BatchResult.FAILED_DEPENDENCY);
+        rolledBack.setGuid(null);
+        rolledBack.setDto(null);
+      }
+      break;
+    }
+    return results;
+  }
+
+  private void runOperation(BatchOperation<DTO> operation, BatchResult<DTO> result,
+      List<BatchResult<DTO>> results) {
+    String guid = resolveGuid(operation.getGuid(), result.getIndex(), results);
+    ENTITY data;
+    if (operation.getType() == null) {
+      throw new EntityServiceException(JpaErrorKeys.INVALID_BATCH, "The type is missing");
+    }
+    switch (operation.getType()) {
+      case CREATE:
+        if (service.isWriteBehind()) {
+          throw new EntityServiceException(JpaErrorKeys.INVALID_BATCH,
+              "The write-behind creates can't be batched");
+        }
+        data = service.create(mapper.map(operation.getDto()));
+        result.setDto(mapper.load(data));
+        result.setStatus(Status.CREATED.getStatusCode());
+        break;
+      case UPDATE:
+        UpdateResult<ENTITY> updated = service.updateChanged(guid,
+            target -> mapper.updateEntity(operation.getDto(), target));
+        data = updated == null ? null : updated.getEntity();
+        result.setDto(data == null ? null : mapper.load(data));
+        break;
+      case DELETE:
+        data = service.findByGuid(guid);
+        if (data != null && !service.deleteByGuid(guid)) {
+          throw new EntityServiceException(JpaErrorKeys.FAILED_BATCH_OPERATION,
+              "Couldn't delete " + guid);
+        }
+        break;
+      default:
+        data = service.findByGuid(guid);
+        result.setDto(mapper.map(data));
+    }
+    if (data == null) {
+      throw new EntityServiceException(JpaErrorKeys.FAILED_TO_FIND_ENTITY, guid);
+    }
+    result.setGuid(data.getGuid());
+    if (result.getStatus() == BatchResult.FAILED_DEPENDENCY) {
+      result.setStatus(Status.OK.getStatusCode());
+    }
+  }
+
+  /**
+   * Resolve a reference like <code>$0</code> to the GUID of a previous operation
+   */
+  private String resolveGuid(String guid, int index, List<BatchResult<DTO>> results) {
+    if (guid == null || !guid.startsWith(BatchOperation.REFERENCE)) {
+      return guid;
+    }
+    try {
+      int referenced = Integer.parseInt(guid.substring(BatchOperation.REFERENCE.length()));
+      if (referenced >= 0 && referenced < index && results.get(referenced).getGuid() != null) {
+        return results.get(referenced).getGuid();
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new EntityServiceException(JpaErrorKeys.INVALID_BATCH,
+        "Operation " + index + " references " + guid);
   }
 
   protected SERVICE getService() {
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.rs.batch;
+
+import java.io.Serializable;
+import ro.brage.dodo.rs.DtoModel;
+
+/**
+ * An operation of a batch. The GUID can reference the entity of a previous operation of the same
+ * batch by its index, e.g. <code>$0</code> for the entity created by the first operation.
+ * 
+ * <pre>
+ * [
+ *   {"type": "CREATE", "dto": {"make": "Volkswagen"}},
+ *   {"type": "UPDATE", "guid": "$0", "dto": {"make": "Volkswagen", "model": "Golf"}},
+ *   {"type": "DELETE", "guid": "7a5f1c1e-..."}
+ * ]
+ * </pre>
+ * 
+ * @author Dorin Brage
+ * @param <DTO> the DTO
+ */
+public class BatchOperation<DTO extends DtoModel> implements Serializable {
+
+  private static final long serialVersionUID = 2617356026542117412L;
+
+  public final static String REFERENCE = "$";
+
+  private BatchOperationType type;
+  private String guid;
+  private DTO dto;
+
+  public BatchOperationType getType() {
+    return type;
+  }
+
+  public void setType(BatchOperationType type) {
+    this.type = type;
+  }
+
+  public String getGuid() {
+    return guid;
+  }
+
+  public void setGuid(String guid) {
+    this.guid = guid;
+  }
+
+  public DTO getDto() {
+    return dto;
+  }
+
+  public void setDto(DTO dto) {
+    this.dto = dto;
+  }
+
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.rs.batch;
+
+import java.io.Serializable;
+import ro.brage.dodo.rs.DtoModel;
+
+/**
+ * The result of a {@link BatchOperation}, the status is the HTTP status the operation would have
+ * had on its own. When an operation fails the whole batch is rolled back and the other operations
+ * get <code>424 Failed Dependency</code>.
+ * 
+ * @author Dorin Brage
+ * @param <DTO> the DTO
+ */
+public class BatchResult<DTO extends DtoModel> implements Serializable {
+
+  private static final long serialVersionUID = -8074411709434460528L;
+
+  public final static int FAILED_DEPENDENCY = 424;
+
+  private int index;
+  private BatchOperationType type;
+  private int status;
+  private String guid;
+  private DTO dto;
+  private String error;
+
+  public BatchResult() {}
+
+  public BatchResult(int index, BatchOperationType type) {
+    this.index = index;
+    this.type = type;
+    this.status = FAILED_DEPENDENCY;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public void setIndex(int index) {
+    this.index = index;
+  }
+
+  public BatchOperationType getType() {
+    return type;
+  }
+
+  public void setType(BatchOperationType type) {
+    this.type = type;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public void setStatus(int status) {
+    this.status = status;
+  }
+
+  public String getGuid() {
+    return guid;
+  }
+
+  public void setGuid(String guid) {
+    this.guid = guid;
+  }
+
+  public DTO getDto() {
+    return dto;
+  }
+
+  public void setDto(DTO dto) {
+    this.dto = dto;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.rs.providers;
+
+import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Answers with <code>202 Accepted</code> instead of <code>200 OK</code> when the resource only
+ * accepted the request, e.g. a create in the write-behind mode
+ * 
+ * @author Dorin Brage
+ */
+@Provider
+public class AcceptedResponseFilter implements ContainerResponseFilter {
+
+  private final static String ACCEPTED = AcceptedResponseFilter.class.getName() + ".accepted";
+
+  /**
+   * Marks the current request as accepted
+   *
+   * @param request the current request, ignored if null
+   */
+  public static void accept(HttpServletRequest request) {
+    if (request != null) {
+      request.setAttribute(ACCEPTED, Boolean.TRUE);
+    }
+  }
+
+  @Override
+  public void filter(ContainerRequestContext requestContext,
+      ContainerResponseContext responseContext) throws IOException {
+    if (Boolean.TRUE.equals(requestContext.getProperty(ACCEPTED))
+        && responseContext.getStatus() == Status.OK.getStatusCode()) {
+      responseContext.setStatus(Status.ACCEPTED.getStatusCode());
+    }
+  }
+
+}
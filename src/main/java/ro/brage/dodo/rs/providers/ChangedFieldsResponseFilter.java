@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.rs.providers;
+
+import java.io.IOException;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Adds the <code>X-Changed-Fields</code> header to the answer of an update, the comma separated
+ * names of the changed attributes, empty if the update was a no-op
+ * 
+ * @author Dorin Brage
+ */
+@Provider
+public class ChangedFieldsResponseFilter implements ContainerResponseFilter {
+
+  public final static String HEADER = "X-Changed-Fields";
+
+  private final static String CHANGED =
+      ChangedFieldsResponseFilter.class.getName() + ".changed";
+
+  /**
+   * Records the changed attributes of the current request
+   *
+   * @param request the current request, ignored if null
+   * @param changedFields the names of the changed attributes
+   */
+  public static void changed(HttpServletRequest request, List<String> changedFields) {
+    if (request != null) {
+      request.setAttribute(CHANGED, String.join(",", changedFields));
+    }
+  }
+
+  @Override
+  public void filter(ContainerRequestContext requestContext,
+      ContainerResponseContext responseContext) throws IOException {
+    Object changed = requestContext.getProperty(CHANGED);
+    if (changed != null) {
+      responseContext.getHeaders().putSingle(HEADER, changed);
+    }
+  }
+
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.rs.providers;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.exceptions.EntityServiceException;
+
+/**
+ * Maps the {@link EntityServiceException} to the HTTP status matching its key
+ * 
+ * @author Dorin Brage
+ */
+@Provider
+public class EntityServiceExceptionMapper implements ExceptionMapper<EntityServiceException> {
+
+  @Override
+  public Response toResponse(EntityServiceException exception) {
+    return Response.status(getStatus(exception)).type(MediaType.TEXT_PLAIN)
+        .entity(exception.getKey().name()).build();
+  }
+
+  protected Status getStatus(EntityServiceException exception) {
+    return getStatus(exception.getKey());
+  }
+
+  /**
+   * @param key the key of an {@link EntityServiceException}
+   * @return the HTTP status matching the key
+   */
+  public static Status getStatus(JpaErrorKeys key) {
+    switch (key) {
+      case WRITE_BUFFER_FULL:
+      case QUERY_TIMEOUT:
+      case OPERATION_TIMEOUT:
+      case CIRCUIT_OPEN:
+        return Status.SERVICE_UNAVAILABLE;
+      case NOT_SEARCHABLE:
+      case INVALID_AGGREGATION:
+      case TOO_MANY_RESULTS:
+      case INVALID_BATCH:
+        return Status.BAD_REQUEST;
+      case FAILED_TO_FIND_ENTITY:
+        return Status.NOT_FOUND;
+      default:
+        return Status.INTERNAL_SERVER_ERROR;
+    }
+  }
+
+}
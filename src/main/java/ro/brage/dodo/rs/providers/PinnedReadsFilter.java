@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.rs.providers;
+
+import java.io.IOException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.NewCookie;
+import javax.ws.rs.ext.Provider;
+import ro.brage.dodo.jpa.routing.ReadWriteRouter;
+
+/**
+ * Carries the read-your-writes pin of
+ * {@link ro.brage.dodo.jpa.annotations.ReadFromReplica#pinAfterWrite()} between the requests of a
+ * caller. After a write the answer has the <code>X-Pinned-Until</code> header and the
+ * <code>dodo-pinned-until</code> cookie, the time in epoch milliseconds until which the caller's
+ * reads go to the primary; the caller sends either one back with its next requests.
+ * 
+ * @author Dorin Brage
+ */
+@Provider
+public class PinnedReadsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+  public final static String HEADER = "X-Pinned-Until";
+  public final static String COOKIE = "dodo-pinned-until";
+
+  /** a token further in the future is capped, so a caller can't stay on the primary */
+  protected final static long MAX_PIN = 60000;
+
+  private final static String RECEIVED = PinnedReadsFilter.class.getName() + ".received";
+
+  @Override
+  public void filter(ContainerRequestContext requestContext) throws IOException {
+    String token = requestContext.getHeaderString(HEADER);
+    if (token == null) {
+      Cookie cookie = requestContext.getCookies().get(COOKIE);
+      token = cookie == null ? null : cookie.getValue();
+    }
+    long until = 0;
+    try {
+      until = token == null ? 0
+          : Math.min(Long.parseLong(token.trim()), System.currentTimeMillis() + MAX_PIN);
+    } catch (NumberFormatException e) {
+      // a malformed token pins nothing
+    }
+    requestContext.setProperty(RECEIVED, until);
+    ReadWriteRouter.setPinnedUntil(until);
+  }
+
+  @Override
+  public void filter(ContainerRequestContext requestContext,
+      ContainerResponseContext responseContext) throws IOException {
+    Object received = requestContext.getProperty(RECEIVED);
+    long until = ReadWriteRouter.getPinnedUntil();
+    ReadWriteRouter.setPinnedUntil(0);
+    if (received == null || until <= (long) received) {
+      return;
+    }
+    int maxAge = (int) ((until - System.currentTimeMillis() + 999) / 1000);
+    responseContext.getHeaders().putSingle(HEADER, String.valueOf(until));
+    responseContext.getHeaders().add(HttpHeaders.SET_COOKIE,
+        new NewCookie(COOKIE, String.valueOf(until), "/", null, null, maxAge, false));
+  }
+
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.rs.utils;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.exceptions.EntityServiceException;
+import ro.brage.dodo.jpa.limits.Deadline;
+import ro.brage.dodo.jpa.utils.Serializer;
+
+/**
+ * Coalesces concurrent calls sharing the same key: the first caller runs the call, the callers
+ * arriving while it's running wait for its result. Every waiting caller gets its own deserialized
+ * copy of the result, so nobody can alter the data of the others. A waiting caller gives up at
+ * its own {@link Deadline}.
+ * 
+ * <pre>
+ * CarDTO car = SingleFlight.execute(Arrays.asList(Car.class, "getByGuid", guid),
+ *     () -&gt; getMapper().map(getService().findByGuid(guid)));
+ * </pre>
+ * 
+ * @author Dorin Brage
+ */
+public class SingleFlight {
+
+  private final static Logger LOG = LoggerFactory.getLogger(SingleFlight.class);
+
+  private final static ConcurrentMap<Object, Flight> FLIGHTS = new ConcurrentHashMap<>();
+
+  private SingleFlight() {}
+
+  /**
+   * Runs the call or waits for the identical call already running
+   *
+   * @param key the key identifying the call, it must implement equals and hashCode
+   * @param call the call
+   * @return the result of the call
+   * @throws EntityServiceException with {@link JpaErrorKeys#OPERATION_TIMEOUT} if the deadline of
+   *         a waiting caller passed
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T execute(Object key, Supplier<T> call) {
+    Flight mine = new Flight();
+    Flight flight = FLIGHTS.compute(key, (k, running) -> {
+      if (running == null) {
+        return mine;
+      }
+      running.waiters.incrementAndGet();
+      return running;
+    });
+
+    if (flight != mine) {
+      byte[] snapshot = await(flight);
+      return snapshot == null ? call.get() : (T) deserialize(snapshot);
+    }
+
+    T result;
+    try {
+      result = call.get();
+    } catch (RuntimeException e) {
+      FLIGHTS.remove(key, mine);
+      mine.result.completeExceptionally(e);
+      throw e;
+    }
+
+    // no new waiter can join once the flight is removed
+    FLIGHTS.remove(key, mine);
+    mine.result.complete(mine.waiters.get() > 0 ? serialize(result) : null);
+    return result;
+  }
+
+  private static byte[] await(Flight flight) {
+    long remaining = Deadline.remaining();
+    if (remaining < 0) {
+      try {
+        return flight.result.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw e;
+      }
+    }
+    try {
+      return flight.result.get(remaining, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw new EntityServiceException(JpaErrorKeys.OPERATION_TIMEOUT,
+          "The operation ran out of time waiting for a coalesced call", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new CompletionException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    }
+  }
+
+  /**
+   * @return the serialized result or null, the waiters run the call themselves if it can't be
+   *         serialized
+   */
+  private static byte[] serialize(Object result) {
+    try {
+      return Serializer.serialize(result);
+    } catch (IOException e) {
+      LOG.warn("Couldn't share the result of a coalesced call: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  private static Object deserialize(byte[] snapshot) {
+    try {
+      return Serializer.deserialize(snapshot);
+    } catch (IOException | ClassNotFoundException e) {
+      throw new IllegalStateException("Couldn't copy the result of a coalesced call", e);
+    }
+  }
+
+  private static class Flight {
+
+    private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+    private final AtomicInteger waiters = new AtomicInteger();
+
+  }
+
+}
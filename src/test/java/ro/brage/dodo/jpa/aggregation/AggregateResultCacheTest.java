@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.aggregation;
+
+import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class AggregateResultCacheTest {
+
+  private final List<String> computed = new ArrayList<>();
+
+  @Test
+  public void evictsTheLeastRecentlyUsedResult() {
+    AggregateResultCache cache = new AggregateResultCache(60000, 2);
+    cache.get("a", () -> compute("a"));
+    cache.get("b", () -> compute("b"));
+    cache.get("a", () -> compute("a"));
+    cache.get("c", () -> compute("c"));
+    assertEquals(2, cache.size());
+
+    cache.get("a", () -> compute("a"));
+    cache.get("b", () -> compute("b"));
+    assertEquals(list("a", "b", "c", "b"), computed);
+  }
+
+  @Test
+  public void keepsTheResultsOfTheOtherEntities() {
+    AggregateResultCache cars = new AggregateResultCache(60000, 1);
+    AggregateResultCache bikes = new AggregateResultCache(60000, 1);
+    bikes.get("count", () -> compute("bikes"));
+    cars.get("count", () -> compute("cars"));
+    cars.get("sum", () -> compute("cars"));
+
+    bikes.get("count", () -> compute("bikes"));
+    assertEquals(list("bikes", "cars", "cars"), computed);
+  }
+
+  @Test
+  public void expiresTheResults() throws InterruptedException {
+    AggregateResultCache cache = new AggregateResultCache(10, 10);
+    cache.get("a", () -> compute("a"));
+    Thread.sleep(20);
+    cache.get("a", () -> compute("a"));
+    assertEquals(list("a", "a"), computed);
+  }
+
+  private List<AggregateRow> compute(String name) {
+    computed.add(name);
+    return Collections.emptyList();
+  }
+
+  private static List<String> list(String... names) {
+    List<String> list = new ArrayList<>();
+    Collections.addAll(list, names);
+    return list;
+  }
+
+}
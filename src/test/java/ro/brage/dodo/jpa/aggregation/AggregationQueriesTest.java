@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.aggregation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import java.util.Date;
+import org.junit.Test;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.annotations.Aggregatable;
+import ro.brage.dodo.jpa.enums.AggregateFunction;
+import ro.brage.dodo.jpa.enums.TimeBucket;
+import ro.brage.dodo.jpa.exceptions.EntityServiceException;
+
+public class AggregationQueriesTest {
+
+  @Test
+  public void theShapeIgnoresTheUnusedParts() {
+    Aggregation count = new Aggregation(AggregateFunction.COUNT).groupBy("make");
+    Aggregation countOf = new Aggregation(AggregateFunction.COUNT).groupBy("make").of("price")
+        .bucket(null, Model.UPDATED_ON);
+    assertEquals(count.getShape(), countOf.getShape());
+
+    Aggregation since = new Aggregation(AggregateFunction.COUNT).between(new Date(), null);
+    Aggregation sinceUpdated = new Aggregation(AggregateFunction.COUNT)
+        .bucket(null, Model.UPDATED_ON).between(new Date(), null);
+    assertNotEquals(since.getShape(), sinceUpdated.getShape());
+  }
+
+  @Test(expected = EntityServiceException.class)
+  public void rejectsAnUnknownAttributeEvenForCount() {
+    AggregationQueries.validate(Car.class,
+        new Aggregation(AggregateFunction.COUNT).of("random"));
+  }
+
+  @Test(expected = EntityServiceException.class)
+  public void rejectsAnUnknownBucketAttributeWithoutBucket() {
+    AggregationQueries.validate(Car.class,
+        new Aggregation(AggregateFunction.COUNT).bucket(null, "random"));
+  }
+
+  @Test(expected = EntityServiceException.class)
+  public void rejectsARepeatedGroup() {
+    AggregationQueries.validate(Car.class,
+        new Aggregation(AggregateFunction.COUNT).groupBy("make", "make"));
+  }
+
+  @Test
+  public void acceptsTheWhitelistedAttributes() {
+    AggregationQueries.validate(Car.class, new Aggregation(AggregateFunction.SUM).of("price")
+        .groupBy("make").bucket(TimeBucket.DAY, Model.CREATED_ON));
+  }
+
+  public static class Car extends Model {
+
+    private static final long serialVersionUID = 1L;
+
+    @Aggregatable
+    private String make;
+
+    @Aggregatable
+    private Long price;
+
+  }
+
+}
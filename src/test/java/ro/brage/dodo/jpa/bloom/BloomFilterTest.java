@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.bloom;
+
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+  @Test
+  public void neverMissesAnAddedValue() {
+    BloomFilter filter = new BloomFilter(10000, 0.01, 0);
+    for (int i = 0; i < 10000; i++) {
+      filter.add("guid-" + i);
+    }
+    for (int i = 0; i < 10000; i++) {
+      assertTrue(filter.mightContain("guid-" + i));
+    }
+  }
+
+  @Test
+  public void keepsTheFalsePositiveRate() {
+    BloomFilter filter = new BloomFilter(10000, 0.01, 0);
+    for (int i = 0; i < 10000; i++) {
+      filter.add("guid-" + i);
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 100000; i++) {
+      if (filter.mightContain("absent-" + i)) {
+        falsePositives++;
+      }
+    }
+    assertTrue(falsePositives < 2000);
+  }
+
+  @Test
+  public void staysWithinTheBudget() {
+    BloomFilter filter = new BloomFilter(1000000, 0.01, 1024);
+    assertTrue(filter.getBits() <= 1024 * 8);
+  }
+
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.bloom;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.Test;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.annotations.ExistenceFilter;
+import ro.brage.dodo.jpa.enums.ChangeOperation;
+import ro.brage.dodo.jpa.events.ChangeEvent;
+
+public class GuidFilterTest {
+
+  @Test
+  public void carriesOverTheGuidsAddedBeforeTheRebuild() {
+    GuidFilter filter = new GuidFilter(Vehicle.class, new Config(true, 600000));
+    filter.rebuild(loader("committed"));
+    filter.add("pending");
+
+    filter.rebuild(loader("committed"));
+    assertTrue(filter.mightContain("committed"));
+    assertTrue(filter.mightContain("pending"));
+    assertFalse(filter.mightContain("absent"));
+  }
+
+  @Test
+  public void forgetsTheGuidsAddedBeforeTheCarryOver() throws InterruptedException {
+    GuidFilter filter = new GuidFilter(Vehicle.class, new Config(true, 10));
+    filter.rebuild(loader());
+    filter.add("deleted");
+    assertTrue(filter.mightContain("deleted"));
+
+    Thread.sleep(50);
+    filter.rebuild(loader());
+    assertFalse(filter.mightContain("deleted"));
+  }
+
+  @Test
+  public void answersMightExistWithoutTransport() {
+    GuidFilter filter = new GuidFilter(Vehicle.class, new Config(false, 600000));
+    filter.rebuild(loader("committed"));
+    assertTrue(filter.mightContain("absent"));
+  }
+
+  @Test
+  public void coversTheSubclasses() {
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    try {
+      GuidFilter filter =
+          GuidFilter.forEntity(Vehicle.class, new Config(true, 600000), executor, loader());
+      assertSame(filter, GuidFilter.lookup(Truck.class));
+      GuidFilter.add(Truck.class, "truck");
+      assertTrue(filter.mightContain("truck"));
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(new ChangeEvent("node", Truck.class.getName(), "truck", null,
+        ChangeOperation.CREATE).is(Vehicle.class));
+    assertFalse(new ChangeEvent("node", Vehicle.class.getName(), "vehicle", null,
+        ChangeOperation.CREATE).is(Truck.class));
+  }
+
+  private static GuidFilter.GuidLoader loader(String... guids) {
+    List<String> all = Arrays.asList(guids);
+    return (after, max) -> after == null ? all : Collections.emptyList();
+  }
+
+  public static class Vehicle extends Model {
+
+    private static final long serialVersionUID = 1L;
+
+  }
+
+  public static class Truck extends Vehicle {
+
+    private static final long serialVersionUID = 1L;
+
+  }
+
+  private static class Config implements ExistenceFilter {
+
+    private final boolean standalone;
+    private final long carryOver;
+
+    Config(boolean standalone, long carryOver) {
+      this.standalone = standalone;
+      this.carryOver = carryOver;
+    }
+
+    @Override
+    public Class<? extends Annotation> annotationType() {
+      return ExistenceFilter.class;
+    }
+
+    @Override
+    public long expectedGuids() {
+      return 1000;
+    }
+
+    @Override
+    public double falsePositiveRate() {
+      return 0.000001;
+    }
+
+    @Override
+    public long maxBytes() {
+      return 0;
+    }
+
+    @Override
+    public long rebuildInterval() {
+      return 3600000;
+    }
+
+    @Override
+    public long carryOver() {
+      return carryOver;
+    }
+
+    @Override
+    public boolean standalone() {
+      return standalone;
+    }
+
+  }
+
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.circuit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.lang.annotation.Annotation;
+import java.sql.SQLException;
+import javax.persistence.NoResultException;
+import javax.persistence.PersistenceException;
+import org.junit.Test;
+import ro.brage.dodo.jpa.annotations.CircuitBreaker;
+import ro.brage.dodo.jpa.enums.CircuitState;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.exceptions.EntityServiceException;
+
+public class CircuitTest {
+
+  @Test
+  public void opensWhenTooManyCallsFailed() throws Exception {
+    Circuit circuit = Circuit.forName("opens", new Config(60000));
+    recordSuccess(circuit);
+    recordFailure(circuit);
+    recordFailure(circuit);
+    assertEquals(CircuitState.CLOSED, circuit.getState());
+
+    recordFailure(circuit);
+    assertEquals(CircuitState.OPEN, circuit.getState());
+    assertOpen(circuit);
+  }
+
+  @Test
+  public void ignoresTheFailuresOfTheCaller() throws Exception {
+    Circuit circuit = Circuit.forName("caller", new Config(60000));
+    for (int i = 0; i < 8; i++) {
+      try {
+        circuit.execute(() -> {
+          throw new NoResultException();
+        });
+      } catch (NoResultException e) {
+        // not a failure of the database
+      }
+    }
+    assertEquals(CircuitState.CLOSED, circuit.getState());
+  }
+
+  @Test
+  public void closesWhenTheProbesSucceed() throws Exception {
+    Circuit circuit = open("closes");
+    Thread.sleep(20);
+    recordSuccess(circuit);
+    assertEquals(CircuitState.HALF_OPEN, circuit.getState());
+
+    recordSuccess(circuit);
+    assertEquals(CircuitState.CLOSED, circuit.getState());
+  }
+
+  @Test
+  public void reopensWhenAProbeFails() throws Exception {
+    Circuit circuit = open("reopens");
+    Thread.sleep(20);
+    recordFailure(circuit);
+    assertEquals(CircuitState.OPEN, circuit.getState());
+    assertOpen(circuit);
+  }
+
+  @Test
+  public void letsOnlyTheProbesThroughWhenHalfOpen() throws Exception {
+    Circuit circuit = open("probes");
+    Thread.sleep(20);
+    circuit.execute(() -> {
+      circuit.execute(() -> null);
+      assertOpen(circuit);
+      return null;
+    });
+    assertEquals(CircuitState.CLOSED, circuit.getState());
+  }
+
+  @Test
+  public void countsTheWrappedDatabaseFailures() {
+    assertTrue(Circuit.isFailure(new EntityServiceException(
+        JpaErrorKeys.FAILED_TO_DELETE_ENTITY, "car", new PersistenceException())));
+    assertFalse(Circuit.isFailure(
+        new EntityServiceException(JpaErrorKeys.FAILED_TO_FIND_ENTITY, "car")));
+  }
+
+  private static Circuit open(String name) throws Exception {
+    Circuit circuit = Circuit.forName(name, new Config(10));
+    for (int i = 0; i < 4; i++) {
+      recordFailure(circuit);
+    }
+    assertEquals(CircuitState.OPEN, circuit.getState());
+    return circuit;
+  }
+
+  private static void recordSuccess(Circuit circuit) throws Exception {
+    circuit.execute(() -> null);
+  }
+
+  private static void recordFailure(Circuit circuit) throws Exception {
+    try {
+      circuit.execute(() -> {
+        throw new PersistenceException(new SQLException("connection refused"));
+      });
+    } catch (PersistenceException e) {
+      // counted by the circuit
+    }
+  }
+
+  private static void assertOpen(Circuit circuit) throws Exception {
+    try {
+      recordSuccess(circuit);
+      fail();
+    } catch (EntityServiceException e) {
+      assertEquals(JpaErrorKeys.CIRCUIT_OPEN, e.getKey());
+    }
+  }
+
+  private static class Config implements CircuitBreaker {
+
+    private final long openFor;
+
+    Config(long openFor) {
+      this.openFor = openFor;
+    }
+
+    @Override
+    public Class<? extends Annotation> annotationType() {
+      return CircuitBreaker.class;
+    }
+
+    @Override
+    public String name() {
+      return "";
+    }
+
+    @Override
+    public int failureRate() {
+      return 75;
+    }
+
+    @Override
+    public long slowCall() {
+      return 60000;
+    }
+
+    @Override
+    public int slowCallRate() {
+      return 100;
+    }
+
+    @Override
+    public int window() {
+      return 4;
+    }
+
+    @Override
+    public long openFor() {
+      return openFor;
+    }
+
+    @Override
+    public int halfOpenCalls() {
+      return 2;
+    }
+
+  }
+
+}
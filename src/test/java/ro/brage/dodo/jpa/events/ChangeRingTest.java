@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import ro.brage.dodo.jpa.enums.ChangeOperation;
+
+public class ChangeRingTest {
+
+  @Test
+  public void drainsTheEventsInTheirOrder() {
+    ChangeRing ring = new ChangeRing(4);
+    for (int i = 0; i < 3; i++) {
+      assertTrue(ring.offer(event(i)));
+    }
+    List<ChangeEvent> batch = new ArrayList<>();
+    assertEquals(2, ring.drain(batch, 2));
+    assertEquals(1, ring.drain(batch, 10));
+    assertEquals(0, ring.drain(batch, 10));
+    assertEquals("0", batch.get(0).getGuid());
+    assertEquals("2", batch.get(2).getGuid());
+  }
+
+  @Test
+  public void refusesTheEventsWhenFullAndReusesTheDrainedSlots() {
+    ChangeRing ring = new ChangeRing(4);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(ring.offer(event(i)));
+    }
+    assertFalse(ring.offer(event(4)));
+
+    List<ChangeEvent> batch = new ArrayList<>();
+    ring.drain(batch, 1);
+    assertTrue(ring.offer(event(4)));
+    assertFalse(ring.offer(event(5)));
+    batch.clear();
+    assertEquals(4, ring.drain(batch, 10));
+    assertEquals("1", batch.get(0).getGuid());
+    assertEquals("4", batch.get(3).getGuid());
+  }
+
+  @Test
+  public void deliversEveryEventOfConcurrentProducers() throws InterruptedException {
+    int producers = 4;
+    int perProducer = 10000;
+    ChangeRing ring = new ChangeRing(1024);
+    CountDownLatch done = new CountDownLatch(producers);
+    for (int p = 0; p < producers; p++) {
+      int offset = p * perProducer;
+      new Thread(() -> {
+        for (int i = 0; i < perProducer; i++) {
+          while (!ring.offer(event(offset + i))) {
+            Thread.yield();
+          }
+        }
+        done.countDown();
+      }).start();
+    }
+
+    Set<String> guids = new HashSet<>();
+    List<ChangeEvent> batch = new ArrayList<>();
+    while (guids.size() < producers * perProducer) {
+      batch.clear();
+      if (ring.drain(batch, 256) == 0) {
+        Thread.yield();
+      }
+      batch.forEach(event -> assertTrue(guids.add(event.getGuid())));
+    }
+    done.await();
+    assertEquals(0, ring.drain(batch, 256));
+  }
+
+  private static ChangeEvent event(int guid) {
+    return new ChangeEvent("node", "Car", String.valueOf(guid), null, ChangeOperation.CREATE);
+  }
+
+}
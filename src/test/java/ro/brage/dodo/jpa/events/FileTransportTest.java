@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ro.brage.dodo.jpa.enums.ChangeOperation;
+
+public class FileTransportTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+  @After
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void skipsTheMalformedLines() throws Exception {
+    Path file = folder.newFile("events.log").toPath();
+    BlockingQueue<List<ChangeEvent>> received = new LinkedBlockingQueue<>();
+    FileTransport transport = new FileTransport(file);
+    transport.open(executor, received::add);
+
+    append(file, "other|Car|1|not-a-date|CREATE\nother|Car|2||RENAME\nother|Car|3|1000|UPDATE\n");
+    List<ChangeEvent> events = received.poll(5, TimeUnit.SECONDS);
+    assertEquals(1, events.size());
+    assertEquals("3", events.get(0).getGuid());
+    assertEquals(ChangeOperation.UPDATE, events.get(0).getOperation());
+
+    append(file, "other|Car|4||ARCHIVE\n");
+    events = received.poll(5, TimeUnit.SECONDS);
+    assertEquals("4", events.get(0).getGuid());
+    transport.close();
+  }
+
+  @Test
+  public void reconnectsAfterAFailedPoll() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("events.log");
+    BlockingQueue<List<ChangeEvent>> received = new LinkedBlockingQueue<>();
+    FileTransport transport = new FileTransport(file);
+    transport.open(executor, received::add);
+    assertTrue(transport.isConnected());
+
+    Files.createDirectory(file);
+    awaitConnected(transport, false);
+
+    Files.delete(file);
+    Files.createFile(file);
+    awaitConnected(transport, true);
+    append(file, "other|Car|5||CREATE\n");
+    assertEquals("5", received.poll(5, TimeUnit.SECONDS).get(0).getGuid());
+
+    transport.close();
+    assertFalse(transport.isConnected());
+  }
+
+  private static void awaitConnected(FileTransport transport, boolean connected)
+      throws InterruptedException {
+    for (int i = 0; i < 100 && transport.isConnected() != connected; i++) {
+      Thread.sleep(FileTransport.POLL_INTERVAL);
+    }
+    assertEquals(connected, transport.isConnected());
+  }
+
+  private static void append(Path file, String lines) throws IOException {
+    Files.write(file, lines.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+  }
+
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.limits;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.exceptions.EntityServiceException;
+
+public class DeadlineTest {
+
+  @Test
+  public void keepsTheResultOfAnOperationEndingAfterTheDeadline() {
+    assertEquals("committed", Deadline.run(1, () -> {
+      sleep(20);
+      return "committed";
+    }));
+    assertNull(Deadline.get());
+  }
+
+  @Test
+  public void failsTheWorkStartedAfterTheDeadline() {
+    try {
+      Deadline.run(1, () -> {
+        sleep(20);
+        Deadline.check();
+        return null;
+      });
+      fail();
+    } catch (EntityServiceException e) {
+      assertEquals(JpaErrorKeys.OPERATION_TIMEOUT, e.getKey());
+    }
+  }
+
+  @Test
+  public void carriesTheDeadlineToAnotherThread() {
+    Deadline.run(60000, () -> {
+      Long deadline = Deadline.get();
+      long[] remaining = new long[1];
+      Thread worker = new Thread(() -> remaining[0] = Deadline.at(deadline, Deadline::remaining));
+      worker.start();
+      join(worker);
+      assertTrue(remaining[0] > 0);
+      return null;
+    });
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void join(Thread thread) {
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
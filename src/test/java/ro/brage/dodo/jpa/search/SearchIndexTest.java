@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Test;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.annotations.Searchable;
+import ro.brage.dodo.jpa.metadata.ReflectiveMetadata;
+
+public class SearchIndexTest {
+
+  @Test
+  public void ranksTheDocumentsMatchingEveryToken() {
+    SearchIndex index = SearchIndex.forEntity(Car.class, searchableFields(Car.class));
+    index.build(after -> Collections.emptyList());
+    index.index("1", new Object[] {"Volkswagen", "Golf"});
+    index.index("2", new Object[] {"Volkswagen", "Polo"});
+    index.index("3", new Object[] {"Golf", "Volkswagen Golf"});
+
+    assertEquals(Arrays.asList("3", "1"), index.search("volks gol", 10));
+    assertEquals(Arrays.asList("3"), index.search("volks gol", 1));
+    assertTrue(index.search("volks tesla", 10).isEmpty());
+
+    index.remove("3");
+    assertEquals(Arrays.asList("1"), index.search("golf", 10));
+  }
+
+  @Test
+  public void capsTheNumberOfResults() {
+    SearchIndex index = SearchIndex.forEntity(Bike.class, searchableFields(Bike.class));
+    index.build(after -> Collections.emptyList());
+    index.index("1", new Object[] {"bmx"});
+
+    assertEquals(Arrays.asList("1"), index.search("bmx", Integer.MAX_VALUE));
+    assertTrue(index.search("bmx", 0).isEmpty());
+  }
+
+  private static <E extends Model> Map<String, Integer> searchableFields(Class<E> entityClass) {
+    return new ReflectiveMetadata<>(entityClass).getSearchableFields();
+  }
+
+  public static class Car extends Model {
+
+    private static final long serialVersionUID = 1L;
+
+    @Searchable(boost = 2)
+    private String make;
+
+    @Searchable
+    private String model;
+
+  }
+
+  public static class Bike extends Model {
+
+    private static final long serialVersionUID = 1L;
+
+    @Searchable
+    private String type;
+
+  }
+
+}
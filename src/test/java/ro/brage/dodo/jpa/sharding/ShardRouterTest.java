@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.sharding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import org.junit.Test;
+
+public class ShardRouterTest {
+
+  @Test
+  public void mergesTheOrderedPagesOfTheShards() {
+    List<List<String>> pages = Arrays.asList(Arrays.asList("a", "d", "e"),
+        Collections.emptyList(), Arrays.asList("b", "c", "f"));
+
+    assertEquals(Arrays.asList("a", "b", "c", "d"),
+        ShardRouter.mergeByKey(pages, Function.identity(), 4));
+    assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f"),
+        ShardRouter.mergeByKey(pages, Function.identity(), 10));
+    assertTrue(ShardRouter.mergeByKey(pages, Function.identity(), 0).isEmpty());
+  }
+
+  @Test
+  public void routesAGuidAlwaysToTheSameShard() {
+    ShardRouter router = ShardRouter.of(4, 64);
+    int[] counts = new int[4];
+    for (int i = 0; i < 10000; i++) {
+      String guid = UUID.randomUUID().toString();
+      int shard = router.shardOf(guid);
+      assertEquals(shard, ShardRouter.of(4, 64).shardOf(guid));
+      counts[shard]++;
+    }
+    for (int count : counts) {
+      assertTrue(count > 1500);
+    }
+  }
+
+  @Test
+  public void movesOnlyTheGuidsOfTheAddedShard() {
+    ShardRouter three = ShardRouter.of(3, 64);
+    ShardRouter four = ShardRouter.of(4, 64);
+    List<String> moved = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      String guid = UUID.randomUUID().toString();
+      if (three.shardOf(guid) != four.shardOf(guid)) {
+        assertEquals(3, four.shardOf(guid));
+        moved.add(guid);
+      }
+    }
+    assertTrue(moved.size() < 4000);
+  }
+
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.update;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.metadata.ReflectiveMetadata;
+
+public class EntityDiffTest {
+
+  private final EntityDiff<Car> diff = EntityDiff.forEntity(new ReflectiveMetadata<>(Car.class));
+
+  @Test
+  public void copiesWithoutSharingTheCollections() {
+    Car car = car();
+    Car copy = diff.copy(car);
+    assertEquals(car.getGuid(), copy.getGuid());
+    assertNotSame(car.drivers, copy.drivers);
+
+    copy.drivers.add("Ana");
+    copy.features.add("gps");
+    copy.options.put("color", "red");
+    assertEquals(Arrays.asList("Ion"), new ArrayList<>(car.drivers));
+    assertEquals(Collections.singleton("abs"), car.features);
+    assertEquals(Collections.singletonMap("seats", "5"), car.options);
+  }
+
+  @Test
+  public void comparesTheCollectionsByTheirElements() {
+    Car car = car();
+    Car copy = diff.copy(car);
+    copy.registered = new Timestamp(car.registered.getTime());
+    copy.price = new BigDecimal("1000.00");
+    assertEquals(Collections.emptyList(), diff.diff(car, copy));
+
+    copy.drivers.add("Ana");
+    copy.options.put("seats", "7");
+    assertEquals(Arrays.asList("drivers", "options"), diff.diff(car, copy));
+  }
+
+  @Test
+  public void appliesTheChangesToTheManagedCollections() {
+    Car car = car();
+    List<String> drivers = car.drivers;
+    Car copy = diff.copy(car);
+    copy.name = "Dacia";
+    copy.drivers.add("Ana");
+
+    List<String> changed = diff.diff(car, copy);
+    assertEquals(Arrays.asList("name", "drivers"), changed);
+    diff.apply(changed, copy, car);
+    assertEquals("Dacia", car.name);
+    assertSame(drivers, car.drivers);
+    assertEquals(Arrays.asList("Ion", "Ana"), new ArrayList<>(car.drivers));
+  }
+
+  private static Car car() {
+    Car car = new Car();
+    car.setGuid("car");
+    car.name = "Logan";
+    car.registered = new Date(1000);
+    car.price = new BigDecimal("1000");
+    car.drivers = new Bag<>(Arrays.asList("Ion"));
+    car.features = new LinkedHashSet<>(Collections.singleton("abs"));
+    car.options = new HashMap<>(Collections.singletonMap("seats", "5"));
+    return car;
+  }
+
+  /**
+   * A list equal only to itself, as the bags of some providers
+   */
+  private static class Bag<E> extends ArrayList<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    Bag(List<E> elements) {
+      super(elements);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return this == other;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(this);
+    }
+  }
+
+  public static class Car extends Model {
+
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+    private Date registered;
+    private BigDecimal price;
+    private List<String> drivers;
+    private Set<String> features;
+    private Map<String, String> options;
+
+    private Car() {}
+  }
+
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.utils;
+
+import static org.junit.Assert.assertEquals;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+
+public class JpaLogTest {
+
+  /** the arguments of the lines logged */
+  private final List<List<Object>> lines = new ArrayList<>();
+
+  @After
+  public void resetInterval() {
+    JpaLog.setInterval(10000);
+  }
+
+  @Test
+  public void summarizesTheErrorsOnceTheIntervalElapsed() throws InterruptedException {
+    JpaLog.setInterval(50);
+    Logger log = logger("summarizes");
+    for (int i = 0; i < 3; i++) {
+      JpaLog.error(log, JpaErrorKeys.FAILED_TO_FIND_ENTITY, new IllegalStateException("down"),
+          null);
+    }
+    assertEquals(1, lines.size());
+
+    JpaLog.flushElapsed();
+    assertEquals(1, lines.size());
+
+    Thread.sleep(60);
+    JpaLog.flushElapsed();
+    assertEquals(2, lines.size());
+    assertEquals(2, lines.get(1).get(2));
+
+    Thread.sleep(60);
+    JpaLog.flushElapsed();
+    assertEquals(2, lines.size());
+  }
+
+  @Test
+  public void logsTheNextErrorAfterAnEmptyFlush() {
+    Logger log = logger("empty");
+    JpaLog.error(log, JpaErrorKeys.FAILED_TO_FIND_ENTITY, new IllegalStateException("down"),
+        null);
+    JpaLog.flush();
+    assertEquals(1, lines.size());
+  }
+
+  private Logger logger(String name) {
+    return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(),
+        new Class<?>[] {Logger.class}, (proxy, method, args) -> {
+          if (method.getName().equals("getName")) {
+            return name;
+          }
+          if (method.getName().equals("error")) {
+            lines.add(args.length == 2 && args[1] instanceof Object[]
+                ? new ArrayList<>(Arrays.asList((Object[]) args[1]))
+                : new ArrayList<>(Arrays.asList(args).subList(1, args.length)));
+          }
+          return null;
+        });
+  }
+
+}
@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.jpa.writebehind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ro.brage.dodo.jpa.Model;
+import ro.brage.dodo.jpa.annotations.WriteBehind;
+import ro.brage.dodo.jpa.enums.JpaErrorKeys;
+import ro.brage.dodo.jpa.exceptions.EntityServiceException;
+
+public class WriteBehindBufferTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ScheduledExecutorService executor;
+
+  /** the batches persisted, with their replay flag */
+  private final List<List<String>> persisted = new ArrayList<>();
+  private final List<Boolean> replays = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    executor = new ScheduledThreadPoolExecutor(1);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void replaysTheJournalAfterAnAbruptStop() throws IOException {
+    WriteBehindBuffer<Event> crashed = buffer(10, (batch, replay) -> {
+      throw new IllegalStateException("down");
+    });
+    crashed.enqueue(event("a"));
+    crashed.enqueue(event("b"));
+
+    WriteBehindBuffer<Event> restarted = buffer(10, this::record);
+    assertEquals(2, restarted.size());
+    assertTrue(restarted.flush());
+
+    assertEquals(Collections.singletonList(list("a", "b")), persisted);
+    assertEquals(Collections.singletonList(true), replays);
+    assertEquals(0, restarted.size());
+    assertTrue(segments().isEmpty());
+  }
+
+  @Test
+  public void retriesAFailedBatchAsAReplay() throws IOException {
+    int[] calls = {0};
+    WriteBehindBuffer<Event> buffer = buffer(10, (batch, replay) -> {
+      if (calls[0]++ == 0) {
+        throw new IllegalStateException("committed but the commit wasn't acknowledged");
+      }
+      record(batch, replay);
+    });
+    buffer.enqueue(event("a"));
+
+    assertFalse(buffer.flush());
+    assertTrue(buffer.flush());
+    assertEquals(Collections.singletonList(true), replays);
+    assertTrue(segments().isEmpty());
+  }
+
+  @Test
+  public void deadLettersAPoisonEntityAndFreesTheBuffer() throws IOException {
+    WriteBehindBuffer<Event> buffer = buffer(3, (batch, replay) -> {
+      if (batch.stream().anyMatch(event -> event.getGuid().equals("poison"))) {
+        throw new IllegalStateException("constraint violation");
+      }
+      record(batch, replay);
+    });
+    buffer.enqueue(event("a"));
+    buffer.enqueue(event("poison"));
+    buffer.enqueue(event("b"));
+
+    assertFalse(buffer.flush());
+    assertTrue(buffer.flush());
+    assertEquals(list("a"), persisted.get(0));
+    assertEquals(list("b"), persisted.get(1));
+    assertEquals(1, deadLetters().size());
+
+    buffer.enqueue(event("c"));
+    buffer.enqueue(event("d"));
+    buffer.enqueue(event("e"));
+    assertTrue(buffer.flush());
+    assertEquals(list("c", "d", "e"), persisted.get(2));
+  }
+
+  @Test
+  public void keepsTheBatchWhileTheDatabaseIsDown() throws IOException {
+    boolean[] down = {true};
+    WriteBehindBuffer<Event> buffer = buffer(3, (batch, replay) -> {
+      if (down[0]) {
+        throw new IllegalStateException("connection refused");
+      }
+      record(batch, replay);
+    });
+    buffer.enqueue(event("a"));
+    buffer.enqueue(event("b"));
+
+    for (int i = 0; i < 5; i++) {
+      assertFalse(buffer.flush());
+    }
+    assertEquals(2, buffer.size());
+    assertTrue(deadLetters().isEmpty());
+
+    down[0] = false;
+    assertTrue(buffer.flush());
+    assertEquals(Collections.singletonList(list("a", "b")), persisted);
+    assertEquals(Collections.singletonList(true), replays);
+  }
+
+  @Test
+  public void keepsTheRestOfTheBatchWhenTheCircuitOpens() throws IOException {
+    boolean[] open = {false};
+    WriteBehindBuffer<Event> buffer = buffer(3, (batch, replay) -> {
+      if (open[0]) {
+        throw new EntityServiceException(JpaErrorKeys.CIRCUIT_OPEN, "open");
+      }
+      if (batch.size() > 1) {
+        throw new IllegalStateException("constraint violation");
+      }
+      record(batch, replay);
+      open[0] = true;
+    });
+    buffer.enqueue(event("a"));
+    buffer.enqueue(event("b"));
+    buffer.enqueue(event("c"));
+
+    assertFalse(buffer.flush());
+    assertFalse(buffer.flush());
+    assertEquals(Collections.singletonList(list("a")), persisted);
+    assertEquals(2, buffer.size());
+    assertTrue(deadLetters().isEmpty());
+
+    open[0] = false;
+    assertFalse(buffer.flush());
+    assertFalse(buffer.flush());
+    assertEquals(list("b"), persisted.get(1));
+  }
+
+  private WriteBehindBuffer<Event> buffer(int capacity, WriteBehindSink<Event> sink) {
+    return new WriteBehindBuffer<>(Event.class, new Config(capacity), executor, sink);
+  }
+
+  private void record(List<Event> batch, boolean replay) {
+    persisted.add(batch.stream().map(Event::getGuid).collect(Collectors.toList()));
+    replays.add(replay);
+  }
+
+  private List<Path> deadLetters() throws IOException {
+    return segments().stream()
+        .filter(segment -> segment.getFileName().toString().contains(".dead-"))
+        .collect(Collectors.toList());
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+      return files.collect(Collectors.toList());
+    }
+  }
+
+  private static List<String> list(String... guids) {
+    List<String> list = new ArrayList<>();
+    Collections.addAll(list, guids);
+    return list;
+  }
+
+  private static Event event(String guid) {
+    Event event = new Event();
+    event.setGuid(guid);
+    return event;
+  }
+
+  public static class Event extends Model {
+
+    private static final long serialVersionUID = 1L;
+
+  }
+
+  private class Config implements WriteBehind {
+
+    private final int capacity;
+
+    Config(int capacity) {
+      this.capacity = capacity;
+    }
+
+    @Override
+    public Class<? extends Annotation> annotationType() {
+      return WriteBehind.class;
+    }
+
+    @Override
+    public int capacity() {
+      return capacity;
+    }
+
+    @Override
+    public int batchSize() {
+      return 10;
+    }
+
+    @Override
+    public long flushInterval() {
+      return 3600000;
+    }
+
+    @Override
+    public long offerTimeout() {
+      return 10;
+    }
+
+    @Override
+    public int maxRetries() {
+      return 2;
+    }
+
+    @Override
+    public long maxBackoff() {
+      return 3600000;
+    }
+
+    @Override
+    public String journal() {
+      return folder.getRoot().getPath();
+    }
+
+    @Override
+    public boolean sync() {
+      return false;
+    }
+
+  }
+
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2018 Dorin Brage
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package ro.brage.dodo.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ServicesProcessorTest {
+
+  private final static String CAR = "package sample;\n"
+      + "import javax.persistence.*;\n"
+      + "import ro.brage.dodo.jpa.Model;\n"
+      + "import ro.brage.dodo.jpa.annotations.*;\n"
+      + "@Entity\n"
+      + "@GenerateServices(dto = CarDto.class, mapper = CarMapper.class)\n"
+      + "@NamedQueries({\n"
+      + "  @NamedQuery(name = \"Car.findAll\", query = \"SELECT c FROM Car c\"),\n"
+      + "  @NamedQuery(name = \"Car.findByMake\",\n"
+      + "      query = \"SELECT c FROM Car c WHERE c.make = :make ORDER BY c.model\")})\n"
+      + "public class Car extends Model {\n"
+      + "  @Searchable(boost = 3) private String make;\n"
+      + "  @Searchable private String model;\n"
+      + "  @Aggregatable private Integer price;\n"
+      + "}\n";
+
+  private final static String CAR_DTO = "package sample;\n"
+      + "public class CarDto extends ro.brage.dodo.rs.DtoModel {}\n";
+
+  private final static String CAR_MAPPER = "package sample;\n"
+      + "public interface CarMapper\n"
+      + "    extends ro.brage.dodo.rs.mappers.AdvancedMapper<Car, CarDto> {}\n";
+
+  private final static String BIKE = "package sample;\n"
+      + "import javax.persistence.*;\n"
+      + "import ro.brage.dodo.jpa.Model;\n"
+      + "import ro.brage.dodo.jpa.annotations.*;\n"
+      + "@Entity\n"
+      + "@GenerateServices\n"
+      + "@NamedQueries({\n"
+      + "  @NamedQuery(name = \"Bike.findAll\", query = \"SELECT b FROM Bike b\"),\n"
+      + "  @NamedQuery(name = \"Bike.findByMake\", query = \"SELECT b FROM Bike b\"),\n"
+      + "  @NamedQuery(name = \"Bike.find_by_make\", query = \"SELECT b FROM Bike b\")})\n"
+      + "public class Bike extends Model {\n"
+      + "  private String make;\n"
+      + "}\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File sources;
+  private File generated;
+  private File classes;
+
+  @Before
+  public void createFolders() throws IOException {
+    sources = folder.newFolder("sources");
+    generated = folder.newFolder("generated");
+    classes = folder.newFolder("classes");
+  }
+
+  @Test
+  public void generatesTheFactsOfTheEntity() throws IOException {
+    List<Diagnostic<? extends JavaFileObject>> diagnostics =
+        compile(source("Car", CAR), source("CarDto", CAR_DTO), source("CarMapper", CAR_MAPPER));
+    assertEquals(diagnostics.toString(), Collections.emptyList(), errors(diagnostics));
+
+    String metadata = generated("CarMetadata");
+    assertTrue(metadata, metadata.contains("fields.put(\"make\", 3);"));
+    assertTrue(metadata, metadata.contains("fields.put(\"model\", 1);"));
+    assertTrue(metadata, metadata.contains(
+        "AGGREGATABLE_ATTRIBUTES = Collections.unmodifiableList(Arrays.asList(\"price\"));"));
+    assertTrue(metadata, metadata.contains(
+        "ORDERED_QUERIES = Collections.unmodifiableList(Arrays.asList(\"Car.findByMake\"));"));
+    assertTrue(metadata, metadata.contains("QUERY_FIND_BY_MAKE = \"Car.findByMake\";"));
+
+    String service = generated("CarEntityService");
+    assertTrue(service, service.contains(
+        "SERVICE = ServiceMetadata.unannotated(sample.Car.class);"));
+    assertTrue(service, service.contains(
+        "return getClass() == CarEntityService.class ? SERVICE : super.getServiceMetadata();"));
+
+    String restService = generated("CarRestApiService");
+    assertTrue(restService, restService.contains("@Path(\"/car\")"));
+    assertTrue(restService, restService.contains(
+        "RestApiService<Car, CarDto, CarEntityService, CarMapper>"));
+  }
+
+  @Test
+  public void renamesTheCollidingConstants() throws IOException {
+    List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(source("Bike", BIKE));
+    assertEquals(diagnostics.toString(), Collections.emptyList(), errors(diagnostics));
+
+    String metadata = generated("BikeMetadata");
+    assertTrue(metadata, metadata.contains("QUERY_FIND_BY_MAKE = \"Bike.findByMake\";"));
+    assertTrue(metadata, metadata.contains("QUERY_FIND_BY_MAKE_2 = \"Bike.find_by_make\";"));
+    assertTrue(metadata, metadata.contains("SEARCHABLE_FIELDS = Collections.emptyMap();"));
+    assertTrue(diagnostics.toString(), diagnostics.stream()
+        .anyMatch(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.WARNING && diagnostic
+            .getMessage(Locale.ROOT).contains("is named QUERY_FIND_BY_MAKE_2")));
+  }
+
+  private File source(String className, String content) throws IOException {
+    Path file = sources.toPath().resolve("sample").resolve(className + ".java");
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file.toFile();
+  }
+
+  private String generated(String className) throws IOException {
+    return new String(Files.readAllBytes(generated.toPath().resolve("sample")
+        .resolve(className + ".java")), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Compiles the sources and the generated classes with the processor only
+   */
+  private List<Diagnostic<? extends JavaFileObject>> compile(File... files) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    try (StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+      List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"),
+          "-s", generated.getPath(), "-d", classes.getPath());
+      CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+          fileManager.getJavaFileObjects(files));
+      task.setProcessors(Collections.singletonList(new ServicesProcessor()));
+      task.call();
+    }
+    return diagnostics.getDiagnostics();
+  }
+
+  private static List<Diagnostic<? extends JavaFileObject>> errors(
+      List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+    List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<>();
+    diagnostics.stream().filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+        .forEach(errors::add);
+    return errors;
+  }
+
+}